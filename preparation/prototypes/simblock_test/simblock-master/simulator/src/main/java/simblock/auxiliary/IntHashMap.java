@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.auxiliary;
+
+import static simblock.auxiliary.IntHashSet.FREE;
+import static simblock.auxiliary.IntHashSet.maxSize;
+import static simblock.auxiliary.IntHashSet.mix;
+import static simblock.auxiliary.IntHashSet.slot;
+import static simblock.auxiliary.IntHashSet.tableSize;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The type Int hash map maps int keys, such as block or node ids, to values without boxing the
+ * keys, with the open addressing layout of {@link IntHashSet}. Iterating the map visits its
+ * values in no particular order.
+ *
+ * @param <V> the type of the values
+ */
+public class IntHashMap<V> implements Iterable<V> {
+
+  /**
+   * The keys, a power of two long.
+   */
+  private int[] keys;
+
+  /**
+   * The values, in the slot of their key.
+   */
+  private Object[] values;
+
+  /**
+   * The number of keys in the map.
+   */
+  private int size = 0;
+
+  /**
+   * Instantiates a new empty Int hash map.
+   */
+  public IntHashMap() {
+    this(8);
+  }
+
+  /**
+   * Instantiates a new empty Int hash map holding the provided number of keys without growing.
+   *
+   * @param expectedSize the expected number of keys
+   */
+  public IntHashMap(int expectedSize) {
+    this.keys = new int[tableSize(expectedSize)];
+    this.values = new Object[this.keys.length];
+    Arrays.fill(this.keys, FREE);
+  }
+
+  /**
+   * Gets the number of keys in the map.
+   *
+   * @return the size
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Checks if the map is empty.
+   *
+   * @return true if the map holds no key
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Checks if the map contains a key.
+   *
+   * @param key the key
+   * @return true if the key is in the map
+   */
+  public boolean containsKey(int key) {
+    return this.keys[slot(this.keys, key)] == key;
+  }
+
+  /**
+   * Gets the value of a key.
+   *
+   * @param key the key
+   * @return the value, or null if the key is not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    int slot = slot(this.keys, key);
+    return this.keys[slot] == key ? (V) this.values[slot] : null;
+  }
+
+  /**
+   * Maps a key to a value.
+   *
+   * @param key   the key
+   * @param value the value
+   * @return the previous value of the key, or null if the key was not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (key == FREE) {
+      throw new IllegalArgumentException("Cannot store " + FREE);
+    }
+    int slot = slot(this.keys, key);
+    if (this.keys[slot] == key) {
+      V previous = (V) this.values[slot];
+      this.values[slot] = value;
+      return previous;
+    }
+    this.keys[slot] = key;
+    this.values[slot] = value;
+    if (++this.size > maxSize(this.keys.length)) {
+      this.rehash(2 * this.keys.length);
+    }
+    return null;
+  }
+
+  /**
+   * Removes a key from the map.
+   *
+   * @param key the key
+   * @return the value of the key, or null if the key was not in the map
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    int slot = slot(this.keys, key);
+    if (this.keys[slot] != key) {
+      return null;
+    }
+    V removed = (V) this.values[slot];
+    this.size--;
+    int mask = this.keys.length - 1;
+    int free = slot;
+    for (int next = (free + 1) & mask; this.keys[next] != FREE; next = (next + 1) & mask) {
+      // A key can fill the freed slot if the slot lies on its probe sequence
+      int home = mix(this.keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        this.keys[free] = this.keys[next];
+        this.values[free] = this.values[next];
+        free = next;
+      }
+    }
+    this.keys[free] = FREE;
+    this.values[free] = null;
+    return removed;
+  }
+
+  /**
+   * Grows the table once to hold the provided number of keys, before a bulk insert.
+   *
+   * @param expectedSize the expected number of keys
+   */
+  public void ensureCapacity(int expectedSize) {
+    if (expectedSize > maxSize(this.keys.length)) {
+      this.rehash(tableSize(expectedSize));
+    }
+  }
+
+  /**
+   * Removes all keys, keeping the capacity.
+   */
+  public void clear() {
+    if (this.size > 0) {
+      Arrays.fill(this.keys, FREE);
+      Arrays.fill(this.values, null);
+      this.size = 0;
+    }
+  }
+
+  @Override
+  public Iterator<V> iterator() {
+    return new Iterator<V>() {
+      private int slot = this.advance(0);
+
+      private int advance(int from) {
+        while (from < keys.length && keys[from] == FREE) {
+          from++;
+        }
+        return from;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return this.slot < keys.length;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public V next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        V value = (V) values[this.slot];
+        this.slot = this.advance(this.slot + 1);
+        return value;
+      }
+    };
+  }
+
+  private void rehash(int tableSize) {
+    int[] oldKeys = this.keys;
+    Object[] oldValues = this.values;
+    this.keys = new int[tableSize];
+    this.values = new Object[this.keys.length];
+    Arrays.fill(this.keys, FREE);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE) {
+        int slot = slot(this.keys, oldKeys[i]);
+        this.keys[slot] = oldKeys[i];
+        this.values[slot] = oldValues[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.auxiliary;
+
+import java.util.Arrays;
+
+/**
+ * The type Int hash set is a set of int keys, such as block or node ids, stored without boxing
+ * in an open addressing table with linear probing. Removed keys shift the following keys of
+ * their probe sequence back, so the table never holds deleted markers. {@link #FREE} cannot be
+ * stored.
+ */
+public class IntHashSet {
+
+  /**
+   * The value marking a free slot.
+   */
+  public static final int FREE = Integer.MIN_VALUE;
+
+  /**
+   * The keys, a power of two long.
+   */
+  private int[] keys;
+
+  /**
+   * The number of keys in the set.
+   */
+  private int size = 0;
+
+  /**
+   * Instantiates a new empty Int hash set.
+   */
+  public IntHashSet() {
+    this(8);
+  }
+
+  /**
+   * Instantiates a new empty Int hash set holding the provided number of keys without growing.
+   *
+   * @param expectedSize the expected number of keys
+   */
+  public IntHashSet(int expectedSize) {
+    this.keys = new int[tableSize(expectedSize)];
+    Arrays.fill(this.keys, FREE);
+  }
+
+  /**
+   * Gets the number of keys in the set.
+   *
+   * @return the size
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Checks if the set is empty.
+   *
+   * @return true if the set holds no key
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Checks if the set contains a key.
+   *
+   * @param key the key
+   * @return true if the key is in the set
+   */
+  public boolean contains(int key) {
+    return this.keys[slot(this.keys, key)] == key;
+  }
+
+  /**
+   * Adds a key to the set.
+   *
+   * @param key the key
+   * @return true if the key was not yet in the set
+   */
+  public boolean add(int key) {
+    if (key == FREE) {
+      throw new IllegalArgumentException("Cannot store " + FREE);
+    }
+    int slot = slot(this.keys, key);
+    if (this.keys[slot] == key) {
+      return false;
+    }
+    this.keys[slot] = key;
+    if (++this.size > maxSize(this.keys.length)) {
+      this.rehash();
+    }
+    return true;
+  }
+
+  /**
+   * Removes a key from the set.
+   *
+   * @param key the key
+   * @return true if the key was in the set
+   */
+  public boolean remove(int key) {
+    int slot = slot(this.keys, key);
+    if (this.keys[slot] != key) {
+      return false;
+    }
+    this.size--;
+    int mask = this.keys.length - 1;
+    int free = slot;
+    for (int next = (free + 1) & mask; this.keys[next] != FREE; next = (next + 1) & mask) {
+      // A key can fill the freed slot if the slot lies on its probe sequence
+      int home = mix(this.keys[next]) & mask;
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        this.keys[free] = this.keys[next];
+        free = next;
+      }
+    }
+    this.keys[free] = FREE;
+    return true;
+  }
+
+  /**
+   * Removes all keys, keeping the capacity.
+   */
+  public void clear() {
+    if (this.size > 0) {
+      Arrays.fill(this.keys, FREE);
+      this.size = 0;
+    }
+  }
+
+  /**
+   * Gets the keys of the set, in no particular order.
+   *
+   * @return a new array of the keys
+   */
+  public int[] toArray() {
+    int[] result = new int[this.size];
+    int count = 0;
+    for (int key : this.keys) {
+      if (key != FREE) {
+        result[count++] = key;
+      }
+    }
+    return result;
+  }
+
+  private void rehash() {
+    int[] oldKeys = this.keys;
+    this.keys = new int[2 * oldKeys.length];
+    Arrays.fill(this.keys, FREE);
+    for (int key : oldKeys) {
+      if (key != FREE) {
+        this.keys[slot(this.keys, key)] = key;
+      }
+    }
+  }
+
+  /**
+   * Gets the slot holding a key, or the free slot ending its probe sequence.
+   *
+   * @param keys the table
+   * @param key  the key
+   * @return the slot
+   */
+  static int slot(int[] keys, int key) {
+    int mask = keys.length - 1;
+    int slot = mix(key) & mask;
+    while (keys[slot] != FREE && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Spreads consecutive keys, such as ids, over the table.
+   *
+   * @param key the key
+   * @return the hash
+   */
+  static int mix(int key) {
+    int h = key * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Gets the table size holding the provided number of keys at a load factor of at most 1/2.
+   *
+   * @param expectedSize the number of keys
+   * @return the table size, a power of two
+   */
+  static int tableSize(int expectedSize) {
+    return Integer.highestOneBit(Math.max(4, 2 * expectedSize - 1)) << 1;
+  }
+
+  /**
+   * Gets the number of keys above which a table of the provided size grows.
+   *
+   * @param tableSize the table size
+   * @return the maximum number of keys
+   */
+  static int maxSize(int tableSize) {
+    return tableSize >>> 1;
+  }
+}
@@ -16,42 +16,21 @@
 
 package simblock.block;
 
+import static simblock.simulator.Simulator.getNode;
+
+import simblock.node.Mempool;
 import simblock.node.Node;
 
 /**
- * The representation of a block.
+ * The representation of a block. The attributes of a block are kept in the {@link BlockStore},
+ * the block only holds its id.
  */
 public class Block {
   /**
-   * The current height of the block.
-   */
-  private final int height;
-
-  /**
-   * The parent {@link Block}.
-   */
-  private final Block parent;
-
-  /**
-   * The {@link Node} that minted the block.
-   */
-  private final Node minter;
-
-  /**
-   * Minting timestamp, absolute time since the beginning of the simulation.
-   */
-  private final long time;
-
-  /**
-   * Block unique id.
+   * Block unique id, the index of the block in the {@link BlockStore}.
    */
   private final int id;
 
-  /**
-   * Latest known block id.
-   */
-  private static int latestId = 0;
-
   /**
    * Instantiates a new Block.
    *
@@ -60,12 +39,10 @@ public class Block {
    * @param time   the time
    */
   public Block(Block parent, Node minter, long time) {
-    this.height = parent == null ? 0 : parent.getHeight() + 1;
-    this.parent = parent;
-    this.minter = minter;
-    this.time = time;
-    this.id = latestId;
-    latestId++;
+    this.id = BlockStore.add(this, parent == null ? BlockStore.NONE : parent.getId(),
+                             minter == null ? 0 : minter.getNodeID(), time);
+    BlockStore.setTransactionEnd(this.id,
+                                 Mempool.getBlockEnd(BlockStore.getFirstTransaction(this.id), time));
   }
 
   /**
@@ -74,7 +51,7 @@ public class Block {
    * @return the int
    */
   public int getHeight() {
-    return this.height;
+    return BlockStore.getHeight(this.id);
   }
 
   /**
@@ -83,7 +60,7 @@ public class Block {
    * @return the block
    */
   public Block getParent() {
-    return this.parent;
+    return BlockStore.getBlock(BlockStore.getParentID(this.id));
   }
 
   /**
@@ -93,7 +70,7 @@ public class Block {
    */
   @SuppressWarnings("unused")
   public Node getMinter() {
-    return this.minter;
+    return getNode(BlockStore.getMinterID(this.id));
   }
 
   /**
@@ -103,7 +80,7 @@ public class Block {
    */
   //TODO what format
   public long getTime() {
-    return this.time;
+    return BlockStore.getTime(this.id);
   }
 
   /**
@@ -128,17 +105,14 @@ public class Block {
   }
 
   /**
-   * Recursively searches for the block at the provided height.
+   * Searches for the block at the provided height, see {@link BlockStore#getAncestor(int, int)}.
    *
    * @param height the height
-   * @return the block with the provided height
+   * @return the ancestor with the provided height, or null if the height is above the block or
+   *     negative
    */
   public Block getBlockWithHeight(int height) {
-    if (this.height == height) {
-      return this;
-    } else {
-      return this.parent.getBlockWithHeight(height);
-    }
+    return BlockStore.getBlock(BlockStore.getAncestor(this.id, height));
   }
 
   /**
@@ -150,11 +124,23 @@ public class Block {
   public boolean isOnSameChainAs(Block block) {
     if (block == null) {
       return false;
-    } else if (this.height <= block.height) {
-      return this.equals(block.getBlockWithHeight(this.height));
-    } else {
-      return this.getBlockWithHeight(block.height).equals(block);
     }
+    int height = Math.min(this.getHeight(), block.getHeight());
+    return BlockStore.getAncestor(this.id, height) == BlockStore.getAncestor(block.id, height);
+  }
+
+  /**
+   * Finds the fork point of self and the provided block, the highest block both chains share,
+   * see {@link BlockStore#getForkPoint(int, int)}.
+   *
+   * @param block the block of the other chain
+   * @return the common ancestor, or null if the chains share no block
+   */
+  public Block getForkPoint(Block block) {
+    if (block == null) {
+      return null;
+    }
+    return BlockStore.getBlock(BlockStore.getForkPoint(this.id, block.id));
   }
 
   @Override
@@ -164,4 +150,9 @@ public class Block {
     }
     return ((Block)o).getId() == this.getId();
   }
+
+  @Override
+  public int hashCode() {
+    return this.id;
+  }
 }
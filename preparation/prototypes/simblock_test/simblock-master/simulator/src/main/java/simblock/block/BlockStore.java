@@ -0,0 +1,366 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.block;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The type Block store keeps the attributes of all blocks in columns of primitive arrays indexed
+ * by block id: parent id, height, skip link id, minter id, minting time, difficulty, total
+ * difficulty and the end of its range of transactions. The columns grow in chunks of {@link #CHUNK_SIZE} blocks, so adding a block never
+ * copies earlier blocks and a chain walk reads a few small arrays instead of chasing object
+ * references. A {@link Block} only holds its id and reads its attributes from the store.
+ */
+public class BlockStore {
+
+  /**
+   * The number of blocks of a chunk, a power of two.
+   */
+  public static final int CHUNK_SIZE = 1 << 14;
+  private static final int CHUNK_BITS = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  /**
+   * The id marking a missing parent or skip link.
+   */
+  public static final int NONE = -1;
+
+  /**
+   * The columns, chunk by chunk.
+   */
+  private static int[][] parents = new int[0][];
+  private static int[][] heights = new int[0][];
+  private static int[][] skips = new int[0][];
+  private static int[][] minters = new int[0][];
+  private static long[][] times = new long[0][];
+  private static long[][] difficulties = new long[0][];
+  private static long[][] totalDifficulties = new long[0][];
+  private static long[][] transactionEnds = new long[0][];
+
+  /**
+   * The block objects, to hand out the ancestors found by a chain walk.
+   */
+  private static Block[][] blocks = new Block[0][];
+
+  /**
+   * The number of blocks, which is the id of the next block.
+   */
+  private static int size = 0;
+
+  /**
+   * The lowest id of a block that is not pruned yet.
+   */
+  private static int firstLiveID = 0;
+
+  /**
+   * The height below which the blocks are pruned, and the number of blocks at the last pruning.
+   */
+  private static int prunedHeight = 0;
+  private static int prunedSize = 0;
+
+  /**
+   * Gets the number of blocks.
+   *
+   * @return the number of blocks
+   */
+  public static int size() {
+    return size;
+  }
+
+  /**
+   * Adds a block. Its height is one more than the height of its parent, its skip link is set to
+   * the ancestor at its skip height, see {@link #getSkipHeight(int)}.
+   *
+   * @param block    the block
+   * @param parentID the id of the parent, or {@link #NONE} for a genesis block
+   * @param minterID the id of the minter, or 0 if the block has no minter
+   * @param time     the minting time
+   * @return the id of the block
+   */
+  static int add(Block block, int parentID, int minterID, long time) {
+    int id = size;
+    int chunk = id >>> CHUNK_BITS;
+    if (chunk == blocks.length) {
+      addChunk();
+    }
+    int index = id & CHUNK_MASK;
+    int height = parentID == NONE ? 0 : getHeight(parentID) + 1;
+    parents[chunk][index] = parentID;
+    heights[chunk][index] = height;
+    skips[chunk][index] = parentID == NONE ? NONE : getAncestor(parentID, getSkipHeight(height));
+    minters[chunk][index] = minterID;
+    times[chunk][index] = time;
+    blocks[chunk][index] = block;
+    size++;
+    return id;
+  }
+
+  private static void addChunk() {
+    int chunks = blocks.length + 1;
+    parents = Arrays.copyOf(parents, chunks);
+    heights = Arrays.copyOf(heights, chunks);
+    skips = Arrays.copyOf(skips, chunks);
+    minters = Arrays.copyOf(minters, chunks);
+    times = Arrays.copyOf(times, chunks);
+    difficulties = Arrays.copyOf(difficulties, chunks);
+    totalDifficulties = Arrays.copyOf(totalDifficulties, chunks);
+    transactionEnds = Arrays.copyOf(transactionEnds, chunks);
+    blocks = Arrays.copyOf(blocks, chunks);
+    parents[chunks - 1] = new int[CHUNK_SIZE];
+    heights[chunks - 1] = new int[CHUNK_SIZE];
+    skips[chunks - 1] = new int[CHUNK_SIZE];
+    minters[chunks - 1] = new int[CHUNK_SIZE];
+    times[chunks - 1] = new long[CHUNK_SIZE];
+    difficulties[chunks - 1] = new long[CHUNK_SIZE];
+    totalDifficulties[chunks - 1] = new long[CHUNK_SIZE];
+    transactionEnds[chunks - 1] = new long[CHUNK_SIZE];
+    blocks[chunks - 1] = new Block[CHUNK_SIZE];
+  }
+
+  /**
+   * Sets the difficulty of a block, its total difficulty adds the total difficulty of its parent.
+   * Difficulties are kept in multiples of a unit difficulty, see {@link ProofOfWorkBlock}, so the
+   * total difficulty of a chain grows with its length only.
+   *
+   * @param id         the block id
+   * @param difficulty the difficulty, in units
+   */
+  static void setDifficulty(int id, long difficulty) {
+    int parentID = getParentID(id);
+    long total = parentID == NONE ? difficulty : getTotalDifficulty(parentID) + difficulty;
+    difficulties[id >>> CHUNK_BITS][id & CHUNK_MASK] = difficulty;
+    totalDifficulties[id >>> CHUNK_BITS][id & CHUNK_MASK] = total;
+  }
+
+  /**
+   * Sets the end of the range of transactions of a block, see {@link
+   * simblock.node.Mempool#getBlockEnd(long, long)}.
+   *
+   * @param id  the block id
+   * @param end the index following the last transaction of the block
+   */
+  static void setTransactionEnd(int id, long end) {
+    transactionEnds[id >>> CHUNK_BITS][id & CHUNK_MASK] = end;
+  }
+
+  /**
+   * Gets the block with the provided id.
+   *
+   * @param id the block id
+   * @return the block, or null for {@link #NONE} and pruned blocks off the final chain
+   */
+  public static Block getBlock(int id) {
+    return id == NONE ? null : blocks[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Prunes the blocks below the provided final block. The store drops its references to the
+   * pruned blocks off the final chain, so those no node holds any more are released. The blocks of
+   * the final chain stay, so that ancestor lookups of pruned heights still resolve for nodes that
+   * lag behind. The columns of all blocks stay for chain walks.
+   *
+   * @param finalID  the id of the final block
+   * @param released the consumer of the ids of the pruned blocks, called before the store drops
+   *                 its reference
+   * @return the number of pruned blocks
+   */
+  public static int prune(int finalID, IntConsumer released) {
+    int height = getHeight(finalID);
+    int pruned = 0;
+    boolean contiguous = true;
+    for (int id = firstLiveID; id < size; id++) {
+      int blockHeight = getHeight(id);
+      if (blockHeight >= height) {
+        contiguous = false;
+      } else if (blockHeight >= prunedHeight || id >= prunedSize) {
+        // Blocks below the height of an earlier pass are pruned already, unless added since
+        released.accept(id);
+        if (getAncestor(finalID, blockHeight) != id) {
+          blocks[id >>> CHUNK_BITS][id & CHUNK_MASK] = null;
+        }
+        pruned++;
+      }
+      if (contiguous) {
+        firstLiveID = id + 1;
+      }
+    }
+    prunedHeight = Math.max(prunedHeight, height);
+    prunedSize = size;
+    return pruned;
+  }
+
+  /**
+   * Gets the parent id of a block.
+   *
+   * @param id the block id
+   * @return the parent id, or {@link #NONE} for a genesis block
+   */
+  public static int getParentID(int id) {
+    return parents[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the height of a block.
+   *
+   * @param id the block id
+   * @return the height
+   */
+  public static int getHeight(int id) {
+    return heights[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the minter id of a block.
+   *
+   * @param id the block id
+   * @return the minter id, or 0 if the block has no minter
+   */
+  public static int getMinterID(int id) {
+    return minters[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the minting time of a block.
+   *
+   * @param id the block id
+   * @return the time
+   */
+  public static long getTime(int id) {
+    return times[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the difficulty of a block.
+   *
+   * @param id the block id
+   * @return the difficulty, in units
+   */
+  public static long getDifficulty(int id) {
+    return difficulties[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the total difficulty of a block, the sum of the difficulties of its chain.
+   *
+   * @param id the block id
+   * @return the total difficulty, in units
+   */
+  public static long getTotalDifficulty(int id) {
+    return totalDifficulties[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the first transaction of a block, the end of the range of its parent.
+   *
+   * @param id the block id
+   * @return the index of the first transaction
+   */
+  public static long getFirstTransaction(int id) {
+    int parentID = getParentID(id);
+    return parentID == NONE ? 0 : getTransactionEnd(parentID);
+  }
+
+  /**
+   * Gets the end of the range of transactions of a block.
+   *
+   * @param id the block id
+   * @return the index following the last transaction of the block
+   */
+  public static long getTransactionEnd(int id) {
+    return transactionEnds[id >>> CHUNK_BITS][id & CHUNK_MASK];
+  }
+
+  /**
+   * Gets the height of the ancestor a block links to besides its parent. Clearing the lowest set
+   * bit of the height, with an odd height first stepping down one block, makes the skip heights
+   * form a skip list in which any ancestor is reached in a logarithmic number of jumps.
+   *
+   * @param height the height of the block
+   * @return the skip height
+   */
+  private static int getSkipHeight(int height) {
+    if (height < 2) {
+      return 0;
+    }
+    return (height & 1) != 0 ? clearLowestBit(clearLowestBit(height - 1)) + 1
+        : clearLowestBit(height);
+  }
+
+  private static int clearLowestBit(int n) {
+    return n & (n - 1);
+  }
+
+  /**
+   * Gets the ancestor of a block at the provided height, following skip links while they do not
+   * jump below that height, in a logarithmic number of steps.
+   *
+   * @param id     the block id
+   * @param height the height
+   * @return the id of the ancestor, or {@link #NONE} if the height is above the block or negative
+   */
+  public static int getAncestor(int id, int height) {
+    int walkHeight = getHeight(id);
+    if (height > walkHeight || height < 0) {
+      return NONE;
+    }
+    int walk = id;
+    while (walkHeight > height) {
+      int skipHeight = getSkipHeight(walkHeight);
+      int skipHeightPrev = getSkipHeight(walkHeight - 1);
+      int skip = skips[walk >>> CHUNK_BITS][walk & CHUNK_MASK];
+      // Take the skip link unless the parent's skip link reaches the target with a longer jump
+      if (skip != NONE && (skipHeight == height || (skipHeight > height
+          && !(skipHeightPrev < skipHeight - 2 && skipHeightPrev >= height)))) {
+        walk = skip;
+        walkHeight = skipHeight;
+      } else {
+        walk = getParentID(walk);
+        walkHeight--;
+      }
+    }
+    return walk;
+  }
+
+  /**
+   * Gets the fork point of two blocks, the highest block both chains share. Both blocks first
+   * jump to the lower of their heights. Blocks of equal height have equal skip heights, so while
+   * their skip links differ the fork point lies below and both take them, otherwise both step to
+   * their parents.
+   *
+   * @param a the id of a block
+   * @param b the id of the block of the other chain
+   * @return the id of the common ancestor, or {@link #NONE} if the chains share no block
+   */
+  public static int getForkPoint(int a, int b) {
+    int height = Math.min(getHeight(a), getHeight(b));
+    a = getAncestor(a, height);
+    b = getAncestor(b, height);
+    while (a != b) {
+      int skipA = skips[a >>> CHUNK_BITS][a & CHUNK_MASK];
+      int skipB = skips[b >>> CHUNK_BITS][b & CHUNK_MASK];
+      if (skipA != skipB) {
+        a = skipA;
+        b = skipB;
+      } else {
+        a = getParentID(a);
+        b = getParentID(b);
+      }
+    }
+    return a;
+  }
+}
@@ -24,12 +24,11 @@ import simblock.node.Node;
 
 
 /**
- * The type Proof of work block.
+ * The type Proof of work block. The difficulty and total difficulty are kept in the {@link
+ * BlockStore} as long multiples of the next difficulty of the genesis block, so the total
+ * difficulty of a chain cannot overflow however many blocks are mined.
  */
 public class ProofOfWorkBlock extends Block {
-  private final BigInteger difficulty;
-  private final BigInteger totalDifficulty;
-  private final BigInteger nextDifficulty;
   private static BigInteger genesisNextDifficulty;
 
   /**
@@ -42,17 +41,12 @@ public class ProofOfWorkBlock extends Block {
    */
   public ProofOfWorkBlock(ProofOfWorkBlock parent, Node minter, long time, BigInteger difficulty) {
     super(parent, minter, time);
-    this.difficulty = difficulty;
-
-    if (parent == null) {
-      this.totalDifficulty = BigInteger.ZERO.add(difficulty);
-      this.nextDifficulty = ProofOfWorkBlock.genesisNextDifficulty;
-    } else {
-      this.totalDifficulty = parent.getTotalDifficulty().add(difficulty);
-      // TODO: difficulty adjustment
-      this.nextDifficulty = parent.getNextDifficulty();
+    BigInteger[] units = difficulty.divideAndRemainder(genesisNextDifficulty);
+    if (units[1].signum() != 0) {
+      throw new IllegalArgumentException(
+          "Difficulty " + difficulty + " is not a multiple of " + genesisNextDifficulty);
     }
-
+    BlockStore.setDifficulty(this.getId(), units[0].longValueExact());
   }
 
   /**
@@ -61,7 +55,8 @@ public class ProofOfWorkBlock extends Block {
    * @return the difficulty
    */
   public BigInteger getDifficulty() {
-    return this.difficulty;
+    return BigInteger.valueOf(BlockStore.getDifficulty(this.getId()))
+        .multiply(genesisNextDifficulty);
   }
 
   /**
@@ -70,16 +65,18 @@ public class ProofOfWorkBlock extends Block {
    * @return the total difficulty
    */
   public BigInteger getTotalDifficulty() {
-    return this.totalDifficulty;
+    return BigInteger.valueOf(BlockStore.getTotalDifficulty(this.getId()))
+        .multiply(genesisNextDifficulty);
   }
 
   /**
-   * Gets next difficulty.
+   * Gets next difficulty. Every block keeps the difficulty of the genesis block.
    *
    * @return the next difficulty
    */
+  // TODO: difficulty adjustment
   public BigInteger getNextDifficulty() {
-    return this.nextDifficulty;
+    return ProofOfWorkBlock.genesisNextDifficulty;
   }
 
   /**
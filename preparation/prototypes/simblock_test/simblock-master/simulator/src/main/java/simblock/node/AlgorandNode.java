@@ -3,6 +3,8 @@ package simblock.node;
 import simblock.block.Block;
 import simblock.node.consensus.AbstractConsensusAlgo;
 import simblock.node.consensus.AlgorandConsensus;
+import simblock.simulator.ChurnEngine;
+import simblock.simulator.FaultInjector;
 import simblock.task.AbstractMessageTask;
 import simblock.task.AbstractMintingTask;
 import simblock.task.algorand.AlgorandIncStepTask;
@@ -14,6 +16,11 @@ import static simblock.simulator.Timer.putTask;
 
 public class AlgorandNode extends Node {
 
+    /**
+     * The latest step whose timer expired while the node was crashed, or 0 if there is none.
+     */
+    private int pendingStep = 0;
+
     /**
      * Instantiates a new Algorand Node.
      *
@@ -36,6 +43,17 @@ public class AlgorandNode extends Node {
     public void minting() {
     }
 
+    /**
+     * Restarts a crashed node, running the step that expired while it was crashed.
+     */
+    @Override
+    public void restart() {
+        if(pendingStep != 0) {
+            putTask(new AlgorandIncStepTask(this, 0, pendingStep));
+            pendingStep = 0;
+        }
+    }
+
     /**
      * Receive message.
      *
@@ -45,7 +63,13 @@ public class AlgorandNode extends Node {
     public void receiveMessage(AbstractMessageTask message) {
         // TODO(miguel) Always discard messages that do not extend the last agreed upon block in the chain
         if(message instanceof AlgorandIncStepTask) {
-            ((AlgorandConsensus)this.getConsensusAlgo()).runStep((AlgorandIncStepTask)message);
+            if((FaultInjector.isActive() && FaultInjector.isCrashed(this)) || !ChurnEngine.isOnline(this)) {
+                // A crashed or departed node does not run its steps, only the latest one is resumed
+                // on restart
+                pendingStep = ((AlgorandIncStepTask)message).getNextStep();
+            } else {
+                ((AlgorandConsensus)this.getConsensusAlgo()).runStep((AlgorandIncStepTask)message);
+            }
         }
         else if(message instanceof AlgorandMsgTask) {
             ((AlgorandConsensus)this.getConsensusAlgo()).processMessage((AlgorandMsgTask)message);
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node;
+
+import static simblock.settings.SimulationConfiguration.BLOCK_SIZE;
+import static simblock.settings.SimulationConfiguration.CHUNK_REQUESTS_PER_PEER;
+import static simblock.settings.SimulationConfiguration.DOWNLOAD_CHUNK_SIZE;
+
+import java.util.Arrays;
+import simblock.block.Block;
+import simblock.task.GetChunkMessageTask;
+
+/**
+ * The type Chunked download is the state of a block downloaded in chunks from every peer that
+ * announced it, see {@link simblock.settings.SimulationConfiguration#MULTI_SOURCE_DOWNLOAD}. The
+ * load of a peer is the number of chunks requested from it and not received yet. The next chunk
+ * is requested from the least loaded peer, so fast peers, which answer sooner, serve more chunks
+ * and the download uses the aggregate upload bandwidth of the peers.
+ */
+final class ChunkedDownload {
+
+  /**
+   * The state of a chunk.
+   */
+  private static final byte MISSING = 0;
+  private static final byte REQUESTED = 1;
+  private static final byte RECEIVED = 2;
+
+  /**
+   * The number of chunks of a block.
+   */
+  static final int NUM_CHUNKS =
+      (int) ((BLOCK_SIZE + DOWNLOAD_CHUNK_SIZE - 1) / DOWNLOAD_CHUNK_SIZE);
+
+  /**
+   * The block.
+   */
+  private final Block block;
+
+  /**
+   * The time the download began.
+   */
+  private final long start;
+
+  /**
+   * The state of every chunk.
+   */
+  private final byte[] chunks = new byte[NUM_CHUNKS];
+
+  /**
+   * The pending request of every requested chunk.
+   */
+  private final GetChunkMessageTask[] requests = new GetChunkMessageTask[NUM_CHUNKS];
+
+  /**
+   * The number of received chunks.
+   */
+  private int received = 0;
+
+  /**
+   * The ids of the peers that announced the block, in order of announcement, and their loads.
+   */
+  private int[] sources = new int[4];
+  private int[] loads = new int[4];
+  private int numSources = 0;
+
+  /**
+   * Instantiates a new Chunked download.
+   *
+   * @param block the block
+   * @param start the time the download begins
+   */
+  ChunkedDownload(Block block, long start) {
+    this.block = block;
+    this.start = start;
+  }
+
+  /**
+   * Gets the block.
+   *
+   * @return the block
+   */
+  Block getBlock() {
+    return this.block;
+  }
+
+  /**
+   * Gets the time the download began.
+   *
+   * @return the time
+   */
+  long getStart() {
+    return this.start;
+  }
+
+  /**
+   * Gets the size of a chunk, the last chunk holds the rest of the block.
+   *
+   * @param chunk the index of the chunk
+   * @return the size in bytes
+   */
+  static long getChunkSize(int chunk) {
+    return Math.min(DOWNLOAD_CHUNK_SIZE, BLOCK_SIZE - chunk * DOWNLOAD_CHUNK_SIZE);
+  }
+
+  /**
+   * Adds a peer that announced the block.
+   *
+   * @param peerID the peer id
+   */
+  void addSource(int peerID) {
+    if (this.indexOf(peerID) >= 0) {
+      return;
+    }
+    if (this.numSources == this.sources.length) {
+      this.sources = Arrays.copyOf(this.sources, 2 * this.numSources);
+      this.loads = Arrays.copyOf(this.loads, 2 * this.numSources);
+    }
+    this.sources[this.numSources] = peerID;
+    this.loads[this.numSources] = 0;
+    this.numSources++;
+  }
+
+  private int indexOf(int peerID) {
+    for (int i = 0; i < this.numSources; i++) {
+      if (this.sources[i] == peerID) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the first chunk that is neither received nor requested.
+   *
+   * @return the index of the chunk, or -1 if every chunk is requested
+   */
+  int getNextChunk() {
+    for (int chunk = 0; chunk < NUM_CHUNKS; chunk++) {
+      if (this.chunks[chunk] == MISSING) {
+        return chunk;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the least loaded peer that can take one more request, the earliest announcer among
+   * equally loaded peers.
+   *
+   * @return the peer id, or -1 if every peer has {@link
+   *     simblock.settings.SimulationConfiguration#CHUNK_REQUESTS_PER_PEER} requests pending
+   */
+  int getLeastLoadedSource() {
+    int best = -1;
+    for (int i = 0; i < this.numSources; i++) {
+      if (this.loads[i] < CHUNK_REQUESTS_PER_PEER
+          && (best < 0 || this.loads[i] < this.loads[best])) {
+        best = i;
+      }
+    }
+    return best < 0 ? -1 : this.sources[best];
+  }
+
+  /**
+   * Records the request of a chunk from a peer.
+   *
+   * @param request the request
+   */
+  void request(GetChunkMessageTask request) {
+    this.chunks[request.getChunk()] = REQUESTED;
+    this.requests[request.getChunk()] = request;
+    this.loads[this.indexOf(request.getTo().getNodeID())]++;
+  }
+
+  /**
+   * Checks if a request is still waiting for its chunk.
+   *
+   * @param request the request
+   * @return true if the chunk is requested and the request is the latest for it
+   */
+  boolean isPending(GetChunkMessageTask request) {
+    int chunk = request.getChunk();
+    return this.chunks[chunk] == REQUESTED && this.requests[chunk] == request;
+  }
+
+  /**
+   * Records the arrival of a chunk.
+   *
+   * @param chunk  the index of the chunk
+   * @param peerID the id of the peer that sent it
+   * @return true if the block is complete
+   */
+  boolean receive(int chunk, int peerID) {
+    int index = this.indexOf(peerID);
+    if (index >= 0) {
+      this.loads[index]--;
+    }
+    if (this.chunks[chunk] != RECEIVED) {
+      this.chunks[chunk] = RECEIVED;
+      this.received++;
+    }
+    return this.received == NUM_CHUNKS;
+  }
+
+  /**
+   * Records that a chunk requested from a peer will not arrive: the chunk is requested again and
+   * the peer is dropped as source if it cannot serve the block any more.
+   *
+   * @param chunk      the index of the chunk
+   * @param peerID     the peer id
+   * @param dropSource whether to drop the peer as source
+   * @return true if peers remain to download the block from
+   */
+  boolean abort(int chunk, int peerID, boolean dropSource) {
+    if (this.chunks[chunk] == REQUESTED) {
+      this.chunks[chunk] = MISSING;
+    }
+    int index = this.indexOf(peerID);
+    if (index >= 0 && !dropSource) {
+      this.loads[index]--;
+    } else if (index >= 0) {
+      this.numSources--;
+      System.arraycopy(this.sources, index + 1, this.sources, index, this.numSources - index);
+      System.arraycopy(this.loads, index + 1, this.loads, index, this.numSources - index);
+    }
+    return this.numSources > 0;
+  }
+}
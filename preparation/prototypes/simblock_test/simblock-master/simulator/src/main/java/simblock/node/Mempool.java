@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node;
+
+import static simblock.settings.SimulationConfiguration.BLOCK_SIZE;
+import static simblock.settings.SimulationConfiguration.MEMPOOL_MISS_RATE_FOR_CHURN_NODE;
+import static simblock.settings.SimulationConfiguration.MEMPOOL_MISS_RATE_FOR_CONTROL_NODE;
+import static simblock.settings.SimulationConfiguration.TRANSACTION_RATE;
+import static simblock.settings.SimulationConfiguration.TRANSACTION_SIZE;
+import static simblock.simulator.Simulator.getNode;
+
+import simblock.block.Block;
+import simblock.block.BlockStore;
+
+/**
+ * The type Mempool models the transactions a node has received, over a global sequence of
+ * transactions broadcast at {@link simblock.settings.SimulationConfiguration#TRANSACTION_RATE}.
+ * The mempool of a node is the range of the sequence from the moment it last came online to now,
+ * minus the transactions it missed. Whether a node missed a transaction is a hash of both ids
+ * against the miss rate of the node, so a mempool costs two fields whatever its size.
+ *
+ * <p>A block holds the range of the sequence that follows the range of its parent, up to the
+ * transactions broadcast by its minting time and at most {@link #MAX_BLOCK_TRANSACTIONS}, minus
+ * the transactions its minter missed. A node reconstructs a compact block from its mempool and
+ * requests the difference.
+ */
+public class Mempool {
+
+  /**
+   * The maximum number of transactions of a block.
+   */
+  public static final long MAX_BLOCK_TRANSACTIONS = BLOCK_SIZE / TRANSACTION_SIZE;
+
+  /**
+   * The node id.
+   */
+  private final int nodeID;
+
+  /**
+   * The probability that the node misses a transaction.
+   */
+  private final double missRate;
+
+  /**
+   * The first transaction of the range, the transactions before it were lost by a crash.
+   */
+  private long start = 0;
+
+  /**
+   * Instantiates a new Mempool.
+   *
+   * @param nodeID      the node id
+   * @param isChurnNode whether the node causes churn
+   */
+  public Mempool(int nodeID, boolean isChurnNode) {
+    this.nodeID = nodeID;
+    this.missRate = isChurnNode ? MEMPOOL_MISS_RATE_FOR_CHURN_NODE
+        : MEMPOOL_MISS_RATE_FOR_CONTROL_NODE;
+  }
+
+  /**
+   * Gets the number of transactions broadcast up to the provided time.
+   *
+   * @param time the time
+   * @return the number of transactions, the index of the next transaction
+   */
+  public static long getTransactionCount(long time) {
+    return Math.max(time, 0) * TRANSACTION_RATE / 1000;
+  }
+
+  /**
+   * Gets the end of the range of transactions of a block.
+   *
+   * @param first the first transaction, the end of the range of the parent
+   * @param time  the minting time
+   * @return the index following the last transaction of the block
+   */
+  public static long getBlockEnd(long first, long time) {
+    return Math.max(first, Math.min(first + MAX_BLOCK_TRANSACTIONS, getTransactionCount(time)));
+  }
+
+  /**
+   * Checks if the node missed a transaction.
+   *
+   * @param transaction the transaction index
+   * @return true if the transaction never reached the node
+   */
+  public boolean hasMissed(long transaction) {
+    long hash = mix(mix(this.nodeID) + transaction);
+    // The 53 high bits as a uniform double in [0, 1)
+    return (hash >>> 11) * 0x1.0p-53 < this.missRate;
+  }
+
+  /**
+   * Checks if the mempool holds a transaction.
+   *
+   * @param transaction the transaction index
+   * @param time        the current time
+   * @return true if the mempool holds the transaction
+   */
+  public boolean contains(long transaction, long time) {
+    return transaction >= this.start && transaction < getTransactionCount(time)
+        && !this.hasMissed(transaction);
+  }
+
+  /**
+   * Counts the transactions of a block the mempool lacks.
+   *
+   * @param block the block
+   * @param time  the current time
+   * @return the number of missing transactions
+   */
+  public int countMissing(Block block, long time) {
+    Node minter = getNode(BlockStore.getMinterID(block.getId()));
+    Mempool minterMempool = minter != null ? minter.getMempool() : null;
+    long end = BlockStore.getTransactionEnd(block.getId());
+    int missing = 0;
+    for (long tx = BlockStore.getFirstTransaction(block.getId()); tx < end; tx++) {
+      if ((minterMempool == null || !minterMempool.hasMissed(tx)) && !this.contains(tx, time)) {
+        missing++;
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * Drops the transactions broadcast before the provided time, when the node crashes or comes
+   * back online.
+   *
+   * @param time the time
+   */
+  public void clear(long time) {
+    this.start = Math.max(this.start, getTransactionCount(time));
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
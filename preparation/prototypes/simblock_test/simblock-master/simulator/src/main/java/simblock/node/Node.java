@@ -22,28 +22,56 @@ import static simblock.settings.SimulationConfiguration.CBR_FAILURE_BLOCK_SIZE_D
 import static simblock.settings.SimulationConfiguration.CBR_FAILURE_RATE_FOR_CHURN_NODE;
 import static simblock.settings.SimulationConfiguration.CBR_FAILURE_RATE_FOR_CONTROL_NODE;
 import static simblock.settings.SimulationConfiguration.COMPACT_BLOCK_SIZE;
+import static simblock.settings.SimulationConfiguration.CUT_THROUGH_PREFIX_SIZE;
+import static simblock.settings.SimulationConfiguration.CUT_THROUGH_RELAY;
+import static simblock.settings.SimulationConfiguration.HIGH_BANDWIDTH_PEERS;
+import static simblock.settings.SimulationConfiguration.MEMPOOL_RECONSTRUCTION;
+import static simblock.settings.SimulationConfiguration.MULTI_SOURCE_DOWNLOAD;
+import static simblock.settings.SimulationConfiguration.TRANSACTION_SIZE;
+import static simblock.settings.SimulationConfiguration.UPLOAD_SLOTS;
 import static simblock.simulator.Main.OUT_JSON_FILE;
-import static simblock.simulator.Network.getBandwidth;
+import static simblock.simulator.Network.getTransferDelay;
+import static simblock.simulator.Network.getTransmissionDelay;
 import static simblock.simulator.Simulator.arriveBlock;
+import static simblock.simulator.Simulator.getNode;
+import static simblock.simulator.Simulator.hasSeen;
 import static simblock.simulator.Timer.getCurrentTime;
 import static simblock.simulator.Timer.putTask;
 import static simblock.simulator.Timer.removeTask;
+import static simblock.simulator.Topology.FLAG_HIGH_BANDWIDTH;
+import static simblock.simulator.Topology.getDegree;
+import static simblock.simulator.Topology.getEdgeFlags;
+import static simblock.simulator.Topology.getFlags;
+import static simblock.simulator.Topology.getOffset;
+import static simblock.simulator.Topology.getTargets;
+import static simblock.simulator.Topology.indexOf;
+import static simblock.simulator.Topology.setEdgeFlags;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
+import simblock.auxiliary.IntHashMap;
+import simblock.auxiliary.IntHashSet;
 import simblock.block.Block;
+import simblock.block.BlockStore;
 import simblock.node.consensus.AbstractConsensusAlgo;
 import simblock.node.routing.AbstractRoutingTable;
+import simblock.simulator.BlockPruner;
+import simblock.simulator.ChurnEngine;
+import simblock.simulator.FaultInjector;
+import simblock.simulator.statistics.ReorgStatistics;
 import simblock.task.AbstractMessageTask;
 import simblock.task.AbstractMintingTask;
 import simblock.task.BlockMessageTask;
+import simblock.task.BlockPrefixMessageTask;
+import simblock.task.ChunkMessageTask;
 import simblock.task.CmpctBlockMessageTask;
 import simblock.task.GetBlockTxnMessageTask;
+import simblock.task.GetChunkMessageTask;
 import simblock.task.InvMessageTask;
 import simblock.task.RecMessageTask;
+import simblock.task.RequestTimeoutTask;
 
 /**
  * A class representing a node in the network.
@@ -84,6 +112,11 @@ public class Node {
    */
   private boolean isChurnNode;
 
+  /**
+   * The transactions received by the node.
+   */
+  private final Mempool mempool;
+
   /**
    * The current block.
    */
@@ -92,7 +125,12 @@ public class Node {
   /**
    * Orphaned blocks known to node.
    */
-  private final Set<Block> orphans = new HashSet<>();
+  private final IntHashMap<Block> orphans = new IntHashMap<>();
+
+  /**
+   * The number of orphans pruned from {@link #orphans}, see {@link #archiveOrphans(int)}.
+   */
+  private int archivedOrphans = 0;
 
   /**
    * The current minting task
@@ -100,15 +138,50 @@ public class Node {
   private AbstractMintingTask mintingTask = null;
 
   /**
-   * In the process of sending blocks.
+   * The number of blocks being sent, at most {@link
+   * simblock.settings.SimulationConfiguration#UPLOAD_SLOTS} from the upload queue plus the pushed
+   * compact blocks.
+   */
+  private int activeUploads = 0;
+
+  /**
+   * The block requests waiting for an upload slot.
+   */
+  private final UploadQueue messageQue = new UploadQueue();
+  /**
+   * The ids of the blocks being downloaded by node.
    */
-  // TODO verify
-  private boolean sendingBlock = false;
+  private final IntHashSet downloadingBlocks = new IntHashSet();
 
-  //TODO
-  private final ArrayList<AbstractMessageTask> messageQue = new ArrayList<>();
-  // TODO
-  private final Set<Block> downloadingBlocks = new HashSet<>();
+  /**
+   * The blocks forwarded in cut-through relay while they are still streaming in, by block id. An
+   * aborted stream stays until the block arrives from another peer, so that the requests for the
+   * block are refused meanwhile.
+   */
+  private final IntHashMap<BlockPrefixMessageTask> incomingStreams = new IntHashMap<>();
+
+  /**
+   * The blocks being downloaded in chunks from several peers, by block id.
+   */
+  private final IntHashMap<ChunkedDownload> chunkedDownloads = new IntHashMap<>();
+
+  /**
+   * The pending request of every block downloaded from a single peer, by block id.
+   */
+  private final IntHashMap<AbstractMessageTask> blockRequests = new IntHashMap<>();
+
+  /**
+   * The other peers that announced a block downloaded from a single peer, by block id. A failed
+   * download is requested again from the first of them.
+   */
+  private final IntHashMap<ArrayDeque<Node>> announcers = new IntHashMap<>();
+
+  /**
+   * The ids of the high-bandwidth compact block relay peers selected by the node, the least
+   * recently selected first.
+   */
+  private final int[] highBandwidthPeers = new int[HIGH_BANDWIDTH_PEERS];
+  private int numHighBandwidthPeers = 0;
 
   /**
    * Processing time of tasks expressed in milliseconds.
@@ -136,6 +209,7 @@ public class Node {
     this.miningPower = miningPower;
     this.useCBR = useCBR;
     this.isChurnNode = isChurnNode;
+    this.mempool = new Mempool(nodeID, isChurnNode);
 
     try {
       this.routingTable = (AbstractRoutingTable) Class.forName(routingTableName).getConstructor(
@@ -175,6 +249,33 @@ public class Node {
     return this.miningPower;
   }
 
+  /**
+   * Gets whether the node uses compact block relay.
+   *
+   * @return true if the node uses compact block relay
+   */
+  public boolean getUseCBR() {
+    return this.useCBR;
+  }
+
+  /**
+   * Gets whether the node causes churn.
+   *
+   * @return true if the node is a churn node
+   */
+  public boolean isChurnNode() {
+    return this.isChurnNode;
+  }
+
+  /**
+   * Gets the mempool.
+   *
+   * @return the mempool
+   */
+  public Mempool getMempool() {
+    return this.mempool;
+  }
+
   /**
    * Gets the consensus algorithm.
    *
@@ -206,12 +307,43 @@ public class Node {
   /**
    * Gets all orphans known to node.
    *
-   * @return the orphans
+   * @return the orphans, by block id
    */
-  public Set<Block> getOrphans() {
+  public IntHashMap<Block> getOrphans() {
     return this.orphans;
   }
 
+  /**
+   * Gets the number of orphans known to node that were pruned with the history below a final
+   * block.
+   *
+   * @return the number of archived orphans
+   */
+  public int getArchivedOrphans() {
+    return this.archivedOrphans;
+  }
+
+  /**
+   * Archives the orphans below the provided height: they are removed and only counted.
+   *
+   * @param height the height of the final block
+   * @return the number of archived orphans
+   */
+  public int archiveOrphans(int height) {
+    int[] archived = new int[this.orphans.size()];
+    int count = 0;
+    for (Block orphan : this.orphans) {
+      if (orphan.getHeight() < height) {
+        archived[count++] = orphan.getId();
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      this.orphans.remove(archived[i]);
+    }
+    this.archivedOrphans += count;
+    return count;
+  }
+
   /**
    * Gets the number of connections a node can have.
    *
@@ -236,7 +368,7 @@ public class Node {
    *
    * @return the neighbors
    */
-  public ArrayList<Node> getNeighbors() {
+  public List<Node> getNeighbors() {
     return this.routingTable.getNeighbors();
   }
 
@@ -294,6 +426,8 @@ public class Node {
     printAddBlock(newBlock);
     // Observe and handle new block arrival
     arriveBlock(newBlock, this);
+    // Blocks buried deep enough below the new head are final
+    BlockPruner.addHead(newBlock);
   }
 
   /**
@@ -315,24 +449,30 @@ public class Node {
   }
 
   /**
-   * Add orphans.
+   * Add orphans. The blocks of the orphaned branch above the fork point of both branches become
+   * orphans, the blocks of the valid branch down to the fork point are no longer orphans.
    *
    * @param orphanBlock the orphan block
    * @param validBlock  the valid block
+   * @return the number of orphaned blocks above the fork point
    */
-  //TODO check this out later
-  public void addOrphans(Block orphanBlock, Block validBlock) {
-    if (orphanBlock != validBlock) {
-      this.orphans.add(orphanBlock);
-      this.orphans.remove(validBlock);
-      if (validBlock == null || orphanBlock.getHeight() > validBlock.getHeight()) {
-        this.addOrphans(orphanBlock.getParent(), validBlock);
-      } else if (orphanBlock.getHeight() == validBlock.getHeight()) {
-        this.addOrphans(orphanBlock.getParent(), validBlock.getParent());
-      } else {
-        this.addOrphans(orphanBlock, validBlock.getParent());
+  public int addOrphans(Block orphanBlock, Block validBlock) {
+    // The fork point may be pruned already, its height is kept by the block store
+    int forkPoint = validBlock != null
+        ? BlockStore.getForkPoint(orphanBlock.getId(), validBlock.getId()) : BlockStore.NONE;
+    int forkHeight = forkPoint != BlockStore.NONE ? BlockStore.getHeight(forkPoint) : -1;
+    int depth = orphanBlock.getHeight() - forkHeight;
+    this.orphans.ensureCapacity(this.orphans.size() + depth);
+    for (Block b = orphanBlock; b != null && b.getHeight() > forkHeight; b = b.getParent()) {
+      this.orphans.put(b.getId(), b);
+    }
+    if (validBlock != null) {
+      // The valid branch includes the fork point, as one of its blocks may have been an orphan
+      for (Block b = validBlock; b != null && b.getHeight() >= forkHeight; b = b.getParent()) {
+        this.orphans.remove(b.getId());
       }
     }
+    return depth;
   }
 
   /**
@@ -347,35 +487,381 @@ public class Node {
   }
 
   /**
-   * Send inv.
+   * Crashes the node. The minting task is abandoned, queued and in-progress downloads and the
+   * mempool are forgotten, while crashed every message to and from the node is dropped by the {@link
+   * simblock.simulator.FaultInjector}. The nodes whose requests were queued time out and download
+   * their blocks from other peers.
+   */
+  public void crash() {
+    if (this.mintingTask != null) {
+      removeTask(this.mintingTask);
+      this.mintingTask = null;
+    }
+    // Uploads in flight still complete and free their slots, queued requests are not answered
+    this.messageQue.clear(request -> { });
+    this.downloadingBlocks.clear();
+    this.chunkedDownloads.clear();
+    this.blockRequests.clear();
+    this.announcers.clear();
+    this.incomingStreams.clear();
+    this.mempool.clear(getCurrentTime());
+  }
+
+  /**
+   * Forgets a download in progress whose block will not arrive and requests the block from
+   * another peer that announced it. Without such a peer the block is requested again when
+   * another peer announces it. A download from a single peer is only aborted by that peer.
+   *
+   * @param block the block
+   * @param peer  the peer the block was expected from
+   */
+  public void abortDownload(Block block, Node peer) {
+    AbstractMessageTask request = this.blockRequests.get(block.getId());
+    if (request != null && request.getTo() != peer) {
+      return;
+    }
+    this.downloadingBlocks.remove(block.getId());
+    this.chunkedDownloads.remove(block.getId());
+    this.blockRequests.remove(block.getId());
+    ArrayDeque<Node> peers = this.announcers.remove(block.getId());
+    if (peers == null || hasSeen(block, this) || !this.wantsBlock(block)) {
+      return;
+    }
+    this.requestBlock(peers.poll(), block);
+    ChunkedDownload download = this.chunkedDownloads.get(block.getId());
+    if (download != null) {
+      for (Node announcer : peers) {
+        download.addSource(announcer.getNodeID());
+      }
+      this.requestChunks(download);
+    } else if (!peers.isEmpty()) {
+      this.announcers.put(block.getId(), peers);
+    }
+  }
+
+  /**
+   * Gives up a request the requested peer did not answer within {@link
+   * simblock.settings.SimulationConfiguration#DOWNLOAD_TIMEOUT}, unless it was answered or
+   * replaced meanwhile. The peer is dropped as source of the block.
+   *
+   * @param request a {@link RecMessageTask}, a {@link GetBlockTxnMessageTask} or a {@link
+   *                GetChunkMessageTask} sent by this node
+   */
+  public void timeoutRequest(AbstractMessageTask request) {
+    Block block = UploadQueue.getBlock(request);
+    if (request instanceof GetChunkMessageTask) {
+      ChunkedDownload download = this.chunkedDownloads.get(block.getId());
+      if (download != null && download.isPending((GetChunkMessageTask) request)) {
+        this.abortChunk(block, request.getTo(), ((GetChunkMessageTask) request).getChunk(), true);
+      }
+    } else if (this.blockRequests.get(block.getId()) == request) {
+      this.abortDownload(block, request.getTo());
+    }
+  }
+
+  /**
+   * Records a block request, which times out if a peer may crash or leave without answering.
+   *
+   * @param request a {@link RecMessageTask}, a {@link GetBlockTxnMessageTask} or a {@link
+   *                GetChunkMessageTask} sent by this node
+   */
+  private void sendRequest(AbstractMessageTask request) {
+    if (!(request instanceof GetChunkMessageTask)) {
+      this.blockRequests.put(UploadQueue.getBlock(request).getId(), request);
+    }
+    putTask(request);
+    if (FaultInjector.hasCrashes() || ChurnEngine.isEnabled()) {
+      putTask(new RequestTimeoutTask(this, request));
+    }
+  }
+
+  /**
+   * Checks if the node wants an announced block, a block that extends its chain or an unknown
+   * orphan of another chain.
+   *
+   * @param block the block
+   * @return true if the node downloads the block
+   */
+  private boolean wantsBlock(Block block) {
+    return !this.orphans.containsKey(block.getId())
+        && (this.consensusAlgo.isReceivedBlockValid(block, this.block)
+            || !block.isOnSameChainAs(this.block));
+  }
+
+  /**
+   * Records another peer to request a block being downloaded from if the download fails.
+   *
+   * @param block the block
+   * @param peer  the peer that announced the block
+   */
+  private void addAnnouncer(Block block, Node peer) {
+    ArrayDeque<Node> peers = this.announcers.get(block.getId());
+    if (peers == null) {
+      peers = new ArrayDeque<>();
+      this.announcers.put(block.getId(), peers);
+    }
+    if (!peers.contains(peer)) {
+      peers.add(peer);
+    }
+  }
+
+  /**
+   * Forgets the state of a download that completed.
+   *
+   * @param block the block
+   */
+  private void finishDownload(Block block) {
+    this.downloadingBlocks.remove(block.getId());
+    this.blockRequests.remove(block.getId());
+    this.announcers.remove(block.getId());
+  }
+
+  /**
+   * Stops forwarding a block streaming in from a peer, when the rest of the block will not
+   * arrive. The uploads of the block in flight are dropped and the requests for it are refused
+   * until the block arrives from another peer.
+   *
+   * @param block the block
+   * @param from  the peer streaming the block
+   */
+  public void abortStream(Block block, Node from) {
+    BlockPrefixMessageTask stream = this.incomingStreams.get(block.getId());
+    if (stream != null && stream.getFrom() == from) {
+      stream.abort();
+    }
+  }
+
+  /**
+   * Refuses a block request, the requesting peer may download the block from another peer.
+   *
+   * @param request the request
+   */
+  private void refuseRequest(AbstractMessageTask request) {
+    if (request instanceof GetChunkMessageTask) {
+      request.getFrom().abortChunk(((GetChunkMessageTask) request).getBlock(), this,
+                                   ((GetChunkMessageTask) request).getChunk(), true);
+    } else {
+      request.getFrom().abortDownload(UploadQueue.getBlock(request), this);
+    }
+  }
+
+  /**
+   * Requests a chunk of a multi-source download again, when the chunk or its request was dropped
+   * on the way. The peer it was requested from stays a source unless it crashed, left the network
+   * or is partitioned from this node.
+   *
+   * @param block the block
+   * @param peer  the peer the chunk was requested from
+   * @param chunk the index of the chunk
+   */
+  public void abortChunk(Block block, Node peer, int chunk) {
+    boolean unreachable = FaultInjector.isActive()
+        && (FaultInjector.isCrashed(peer) || FaultInjector.isPartitioned(this, peer))
+        || ChurnEngine.isEnabled() && !ChurnEngine.isOnline(peer);
+    this.abortChunk(block, peer, chunk, unreachable);
+  }
+
+  /**
+   * Requests a chunk of a multi-source download again, from another peer if the peer it was
+   * requested from is dropped as source. The download is forgotten if no peer is left.
+   *
+   * @param block      the block
+   * @param peer       the peer the chunk was requested from
+   * @param chunk      the index of the chunk
+   * @param dropSource whether the peer cannot serve the block
+   */
+  private void abortChunk(Block block, Node peer, int chunk, boolean dropSource) {
+    ChunkedDownload download = this.chunkedDownloads.get(block.getId());
+    if (download == null) {
+      return;
+    }
+    if (download.abort(chunk, peer.getNodeID(), dropSource)) {
+      this.requestChunks(download);
+    } else {
+      this.abortDownload(block, peer);
+    }
+  }
+
+  /**
+   * Requests a block from the peer that announced it. With {@link
+   * simblock.settings.SimulationConfiguration#MULTI_SOURCE_DOWNLOAD} a block that is not relayed
+   * as compact block is downloaded in chunks, from this peer and the peers announcing it later.
+   *
+   * @param from  the peer
+   * @param block the block
+   */
+  private void requestBlock(Node from, Block block) {
+    downloadingBlocks.add(block.getId());
+    if (MULTI_SOURCE_DOWNLOAD && !(this.useCBR && from.useCBR)) {
+      ChunkedDownload download = new ChunkedDownload(block, getCurrentTime());
+      this.chunkedDownloads.put(block.getId(), download);
+      download.addSource(from.getNodeID());
+      this.requestChunks(download);
+    } else {
+      this.sendRequest(new RecMessageTask(this, from, block));
+    }
+  }
+
+  /**
+   * Requests the chunks of a multi-source download that are not requested yet, each from the
+   * least loaded peer, as long as a peer can take more requests.
+   *
+   * @param download the download
+   */
+  private void requestChunks(ChunkedDownload download) {
+    int chunk = download.getNextChunk();
+    int peerID = download.getLeastLoadedSource();
+    while (chunk >= 0 && peerID >= 0) {
+      GetChunkMessageTask request = new GetChunkMessageTask(this, getNode(peerID),
+                                                            download.getBlock(), chunk,
+                                                            download.getStart());
+      download.request(request);
+      this.sendRequest(request);
+      chunk = download.getNextChunk();
+      peerID = download.getLeastLoadedSource();
+    }
+  }
+
+  /**
+   * Restarts a crashed node, which resumes minting on top of its current block. The transactions
+   * broadcast while it was crashed never reached it.
+   */
+  public void restart() {
+    this.mempool.clear(getCurrentTime());
+    if (this.block != null) {
+      this.minting();
+    }
+  }
+
+  /**
+   * Send inv. The neighbors that selected the node as high-bandwidth peer get the compact block
+   * right away instead.
    *
    * @param block the block
    */
   public void sendInv(Block block) {
-    for (Node to : this.routingTable.getNeighbors()) {
-      AbstractMessageTask task = new InvMessageTask(this, to, block);
-      putTask(task);
+    int[] targets = getTargets();
+    int[] flags = getFlags();
+    int offset = getOffset(this.nodeID);
+    for (int i = offset; i < offset + getDegree(this.nodeID); i++) {
+      Node to = getNode(targets[i]);
+      if ((flags[i] & FLAG_HIGH_BANDWIDTH) != 0 && this.useCBR && to.useCBR) {
+        this.pushCompactBlock(to, block);
+      } else {
+        AbstractMessageTask task = new InvMessageTask(this, to, block);
+        putTask(task);
+      }
     }
   }
 
+  /**
+   * Pushes a compact block to a neighbor, ahead of the upload queue. The upload takes an extra
+   * upload slot until it completes.
+   *
+   * @param to    the neighbor
+   * @param block the block
+   */
+  private void pushCompactBlock(Node to, Block block) {
+    this.activeUploads++;
+    long delay = getTransferDelay(COMPACT_BLOCK_SIZE, this, to, this.getUploadShares())
+        + processingTime;
+    AbstractMessageTask messageTask = new CmpctBlockMessageTask(this, to, block,
+                                                                this.getStreamedDelay(block, delay));
+    messageTask.setStream(this.incomingStreams.get(block.getId()));
+    putTask(messageTask);
+  }
+
+  /**
+   * Gets the delay of an upload of a block that may still be streaming in, which cannot end
+   * before the last byte of the block arrived.
+   *
+   * @param block the block
+   * @param delay the transfer delay of the upload
+   * @return the delay of the upload
+   */
+  private long getStreamedDelay(Block block, long delay) {
+    BlockPrefixMessageTask stream = this.incomingStreams.get(block.getId());
+    return stream == null ? delay
+        : Math.max(delay, stream.getStreamEnd() - getCurrentTime() + processingTime);
+  }
+
+  /**
+   * Selects a peer that delivered a new block as high-bandwidth compact block relay peer, like
+   * Bitcoin Core does. The least recently selected peer falls back to low-bandwidth mode when
+   * the node already has {@link simblock.settings.SimulationConfiguration#HIGH_BANDWIDTH_PEERS}.
+   * The selection is the flag of the edge in the row of the peer.
+   *
+   * @param peer the peer
+   */
+  private void selectHighBandwidthPeer(Node peer) {
+    if (HIGH_BANDWIDTH_PEERS == 0 || !this.useCBR || !peer.useCBR) {
+      return;
+    }
+    // Forget the peers whose link was closed, or the peer itself to add it as most recent
+    int kept = 0;
+    for (int i = 0; i < this.numHighBandwidthPeers; i++) {
+      int peerID = this.highBandwidthPeers[i];
+      int index = indexOf(peerID, this.nodeID);
+      if (peerID != peer.getNodeID() && index >= 0
+          && (getEdgeFlags(peerID, index) & FLAG_HIGH_BANDWIDTH) != 0) {
+        this.highBandwidthPeers[kept++] = peerID;
+      }
+    }
+    this.numHighBandwidthPeers = kept;
+    int index = indexOf(peer.getNodeID(), this.nodeID);
+    if (index < 0) {
+      return;
+    }
+    if (this.numHighBandwidthPeers == HIGH_BANDWIDTH_PEERS) {
+      int evictedID = this.highBandwidthPeers[0];
+      int evictedIndex = indexOf(evictedID, this.nodeID);
+      setEdgeFlags(evictedID, evictedIndex,
+                   getEdgeFlags(evictedID, evictedIndex) & ~FLAG_HIGH_BANDWIDTH);
+      System.arraycopy(this.highBandwidthPeers, 1, this.highBandwidthPeers, 0,
+                       --this.numHighBandwidthPeers);
+    }
+    setEdgeFlags(peer.getNodeID(), index,
+                 getEdgeFlags(peer.getNodeID(), index) | FLAG_HIGH_BANDWIDTH);
+    this.highBandwidthPeers[this.numHighBandwidthPeers++] = peer.getNodeID();
+  }
+
+  /**
+   * Receives a downloaded block, selecting its sender as high-bandwidth peer if the block
+   * extends the chain of the node.
+   *
+   * @param block the block
+   * @param from  the sender
+   */
+  private void receiveDownloadedBlock(Block block, Node from) {
+    this.finishDownload(block);
+    if (this.consensusAlgo.isReceivedBlockValid(block, this.block)) {
+      this.selectHighBandwidthPeer(from);
+    }
+    this.receiveBlock(block);
+  }
+
   /**
    * Receive block.
    *
    * @param block the block
    */
   public void receiveBlock(Block block) {
+    BlockPrefixMessageTask stream = this.incomingStreams.remove(block.getId());
+    boolean forwarded = stream != null && !stream.isAborted();
     if (this.consensusAlgo.isReceivedBlockValid(block, this.block)) {
       if (this.block != null && !this.block.isOnSameChainAs(block)) {
-        // If orphan mark orphan
-        this.addOrphans(this.block, block);
+        // If orphan mark orphan, the abandoned blocks are the depth of the reorganization
+        ReorgStatistics.record(this.addOrphans(this.block, block));
       }
       // Else add to canonical chain
       this.addToChain(block);
       // Generates a new minting task
       this.minting();
-      // Advertise received block
-      this.sendInv(block);
-    } else if (!this.orphans.contains(block) && !block.isOnSameChainAs(this.block)) {
+      // Advertise received block, unless it was forwarded while streaming in
+      if (!forwarded) {
+        this.sendInv(block);
+      }
+    } else if (!this.orphans.containsKey(block.getId()) && !block.isOnSameChainAs(this.block)) {
       // TODO better understand - what if orphan is not valid?
       // If the block was not valid but was an unknown orphan and is not on the same chain as the
       // current block
@@ -394,52 +880,84 @@ public class Node {
 
     if (message instanceof InvMessageTask) {
       Block block = ((InvMessageTask) message).getBlock();
-      if (!this.orphans.contains(block) && !this.downloadingBlocks.contains(block)) {
-        if (this.consensusAlgo.isReceivedBlockValid(block, this.block)) {
-          AbstractMessageTask task = new RecMessageTask(this, from, block);
-          putTask(task);
-          downloadingBlocks.add(block);
-        } else if (!block.isOnSameChainAs(this.block)) {
-          // get new orphan block
-          AbstractMessageTask task = new RecMessageTask(this, from, block);
-          putTask(task);
-          downloadingBlocks.add(block);
-        }
+      ChunkedDownload download = this.chunkedDownloads.get(block.getId());
+      if (download != null) {
+        // The peer can serve chunks of the block being downloaded too
+        download.addSource(from.getNodeID());
+        this.requestChunks(download);
+      } else if (this.downloadingBlocks.contains(block.getId())) {
+        this.addAnnouncer(block, from);
+      } else if (this.wantsBlock(block)) {
+        this.requestBlock(from, block);
       }
     }
 
-    if (message instanceof RecMessageTask) {
-      this.messageQue.add((RecMessageTask) message);
-      if (!sendingBlock) {
-        this.sendNextBlockMessage();
+    if (message instanceof BlockPrefixMessageTask) {
+      Block block = ((BlockPrefixMessageTask) message).getBlock();
+      BlockPrefixMessageTask stream = this.incomingStreams.get(block.getId());
+      // Forward a block extending the chain as soon as its prefix is validated
+      if (!hasSeen(block, this) && (stream == null || stream.isAborted())
+          && this.consensusAlgo.isReceivedBlockValid(block, this.block)) {
+        this.incomingStreams.put(block.getId(), (BlockPrefixMessageTask) message);
+        this.sendInv(block);
       }
     }
 
-    if(message instanceof GetBlockTxnMessageTask){
-			this.messageQue.add((GetBlockTxnMessageTask) message);
-			if(!sendingBlock){
-				this.sendNextBlockMessage();
-			}
-		}
+    if (message instanceof RecMessageTask || message instanceof GetChunkMessageTask
+        || message instanceof GetBlockTxnMessageTask) {
+      this.messageQue.add(message);
+      this.startUploads();
+    }
 
     if(message instanceof CmpctBlockMessageTask){
 			Block block = ((CmpctBlockMessageTask) message).getBlock();
-      Random random = new Random();
-      float CBRfailureRate = this.isChurnNode ? CBR_FAILURE_RATE_FOR_CHURN_NODE : CBR_FAILURE_RATE_FOR_CONTROL_NODE;
-			boolean success = random.nextDouble() > CBRfailureRate ? true : false;
+      if (hasSeen(block, this)) {
+        // A high-bandwidth peer pushed a block the node already has
+        this.finishDownload(block);
+        return;
+      }
+      boolean success;
+      long missingSize = 0;
+      if (MEMPOOL_RECONSTRUCTION) {
+        // Reconstruct the block from the mempool and request the missing transactions
+        missingSize = this.mempool.countMissing(block, getCurrentTime()) * TRANSACTION_SIZE;
+        success = missingSize == 0;
+      } else {
+        Random random = new Random();
+        float CBRfailureRate = this.isChurnNode ? CBR_FAILURE_RATE_FOR_CHURN_NODE : CBR_FAILURE_RATE_FOR_CONTROL_NODE;
+        success = random.nextDouble() > CBRfailureRate ? true : false;
+      }
+			AbstractMessageTask request = this.blockRequests.get(block.getId());
 			if(success){
-				downloadingBlocks.remove(block);
-				this.receiveBlock(block);
+				this.receiveDownloadedBlock(block, from);
+			}else if(!this.downloadingBlocks.contains(block.getId())){
+				// Mark the download of a pushed block, so that invs and other pushes do not start another
+				this.downloadingBlocks.add(block.getId());
+				this.sendRequest(new GetBlockTxnMessageTask(this, from, block, missingSize));
+			}else if(request instanceof RecMessageTask && request.getTo() == from){
+				this.sendRequest(new GetBlockTxnMessageTask(this, from, block, missingSize));
 			}else{
-				AbstractMessageTask task = new GetBlockTxnMessageTask(this, from, block);
-				putTask(task);
+				// Pushed while the block downloads from another peer
+				this.addAnnouncer(block, from);
 			}
 		}
 
     if (message instanceof BlockMessageTask) {
       Block block = ((BlockMessageTask) message).getBlock();
-      downloadingBlocks.remove(block);
-      this.receiveBlock(block);
+      this.receiveDownloadedBlock(block, from);
+    }
+
+    if (message instanceof ChunkMessageTask) {
+      Block block = ((ChunkMessageTask) message).getBlock();
+      ChunkedDownload download = this.chunkedDownloads.get(block.getId());
+      if (download != null) {
+        if (download.receive(((ChunkMessageTask) message).getChunk(), from.getNodeID())) {
+          this.chunkedDownloads.remove(block.getId());
+          this.receiveDownloadedBlock(block, from);
+        } else {
+          this.requestChunks(download);
+        }
+      }
     }
   }
 
@@ -459,45 +977,94 @@ public class Node {
 	}
 
   /**
-   * Send next block message.
+   * Send next block message, called when an upload completes and frees its slot.
    */
-  // send a block to the sender of the next queued recMessage
   public void sendNextBlockMessage() {
-    if (this.messageQue.size() > 0) {
-      Node to = this.messageQue.get(0).getFrom();
-      long bandwidth = getBandwidth(this.getRegion(), to.getRegion());
+    this.activeUploads--;
+    this.startUploads();
+  }
 
-      AbstractMessageTask messageTask;
+  /**
+   * Gets the number of shares the upload bandwidth is split into. Every upload gets one share for
+   * its whole duration, sized by the slot count rather than by the uploads active when it starts,
+   * so the uploads of the slots together never take more than the upload bandwidth. Pushed
+   * compact blocks beyond the slots make the shares smaller.
+   *
+   * @return the number of shares
+   */
+  private int getUploadShares() {
+    return Math.max(UPLOAD_SLOTS, this.activeUploads);
+  }
 
-      if(this.messageQue.get(0) instanceof RecMessageTask){
-        Block block = ((RecMessageTask) this.messageQue.get(0)).getBlock();
+  /**
+   * Starts uploads from the upload queue while a slot is free. Every upload gets a share of the
+   * upload bandwidth, see {@link #getUploadShares()}.
+   */
+  private void startUploads() {
+    while (this.activeUploads < UPLOAD_SLOTS && !this.messageQue.isEmpty()) {
+      AbstractMessageTask request = this.messageQue.poll();
+      Node to = request.getFrom();
+      Block block = UploadQueue.getBlock(request);
+      BlockPrefixMessageTask stream = this.incomingStreams.get(block.getId());
+      if (stream != null && stream.isAborted()) {
+        // The block stopped streaming in, the node does not hold it
+        this.refuseRequest(request);
+        continue;
+      }
+      this.activeUploads++;
+
+      AbstractMessageTask messageTask;
+      if (request instanceof RecMessageTask) {
         // If use compact block relay.
-        if(this.messageQue.get(0).getFrom().useCBR && this.useCBR) {
-          // Convert bytes to bits and divide by the bandwidth expressed as bit per millisecond, add
-          // processing time.
-          long delay = COMPACT_BLOCK_SIZE * 8 / (bandwidth / 1000) + processingTime;
+        if (to.useCBR && this.useCBR) {
+          // Transmission delay of the compact block, add processing time.
+          long delay = getTransferDelay(COMPACT_BLOCK_SIZE, this, to, this.getUploadShares())
+              + processingTime;
 
           // Send compact block message.
-          messageTask = new CmpctBlockMessageTask(this, to, block, delay);
+          messageTask = new CmpctBlockMessageTask(this, to, block,
+                                                  this.getStreamedDelay(block, delay));
         } else {
           // Else use lagacy protocol.
-          long delay = BLOCK_SIZE * 8 / (bandwidth / 1000) + processingTime;
+          long transferDelay = getTransferDelay(BLOCK_SIZE, this, to, this.getUploadShares())
+              + processingTime;
+          long delay = this.getStreamedDelay(block, transferDelay);
           messageTask = new BlockMessageTask(this, to, block, delay);
+          if (CUT_THROUGH_RELAY) {
+            // The prefix travels with the block, over the same latency. This node holds the
+            // prefix of a block it streams, only the rest waits for the stream
+            long latency = messageTask.getInterval() - delay;
+            long prefixDelay = transferDelay * CUT_THROUGH_PREFIX_SIZE / BLOCK_SIZE;
+            AbstractMessageTask prefixTask = new BlockPrefixMessageTask(
+                this, to, block, latency + prefixDelay,
+                getCurrentTime() + messageTask.getInterval());
+            prefixTask.setStream(stream);
+            putTask(prefixTask);
+          }
         }
-      } else if(this.messageQue.get(0) instanceof GetBlockTxnMessageTask) {
+      } else if (request instanceof GetChunkMessageTask) {
+        // Send a chunk of a multi-source download. The connection stays open across the chunks
+        // of the block, so the chunk bears its share of the congestion window stalls of the
+        // whole block instead of a slow start of its own
+        int chunk = ((GetChunkMessageTask) request).getChunk();
+        long chunkSize = ChunkedDownload.getChunkSize(chunk);
+        long stalls = getTransferDelay(BLOCK_SIZE, this, to, this.getUploadShares())
+            - getTransmissionDelay(BLOCK_SIZE, this, to, this.getUploadShares());
+        long delay = getTransmissionDelay(chunkSize, this, to, this.getUploadShares())
+            + stalls * chunkSize / BLOCK_SIZE + processingTime;
+        messageTask = new ChunkMessageTask(this, to, block, chunk,
+                                           this.getStreamedDelay(block, delay));
+      } else {
         // Else from requests missing transactions.
-        Block block = ((GetBlockTxnMessageTask) this.messageQue.get(0)).getBlock();
-        long delay = getFailedBlockSize() * 8 / (bandwidth / 1000) + processingTime;
+        long size = MEMPOOL_RECONSTRUCTION ? ((GetBlockTxnMessageTask) request).getMissingSize()
+            : getFailedBlockSize();
+        long delay = this.getStreamedDelay(
+            block, getTransferDelay(size, this, to, this.getUploadShares()) + processingTime);
         messageTask = new BlockMessageTask(this, to, block, delay);
-      } else {
-        throw new UnsupportedOperationException();
       }
-      
-      sendingBlock = true;
-      this.messageQue.remove(0);
+      // The upload is dropped if the block stops streaming in
+      messageTask.setStream(stream);
       putTask(messageTask);
-    } else {
-      sendingBlock = false;
     }
   }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node;
+
+import static simblock.simulator.Timer.getCurrentTime;
+
+import java.util.function.Consumer;
+import simblock.block.Block;
+import simblock.task.AbstractMessageTask;
+import simblock.task.GetBlockTxnMessageTask;
+import simblock.task.GetChunkMessageTask;
+import simblock.task.RecMessageTask;
+
+/**
+ * The type Upload queue holds the block requests a node has yet to serve, in ring buffers. Requests
+ * for missing transactions of a compact block are served before requests for blocks and chunks of
+ * blocks, since they complete a block the peer already almost has. Within each of both classes
+ * requests are served by increasing block height, so a parent leaves before its child. Requests
+ * for the same height are served in order of arrival, except that the chunks of a multi-source
+ * download are ranked by the start of the download, so that an earlier download completes first
+ * rather than all downloads progressing in lockstep. Requests mostly arrive in this order, so
+ * adding one is usually an append at the tail and taking one is always a removal at the head.
+ */
+public class UploadQueue {
+
+  /**
+   * The queue of requests for missing transactions and the queue of requests for blocks.
+   */
+  private final Ring transactionRequests = new Ring();
+  private final Ring blockRequests = new Ring();
+
+  /**
+   * Adds a request.
+   *
+   * @param request a {@link RecMessageTask}, a {@link GetChunkMessageTask} or a {@link
+   *                GetBlockTxnMessageTask}
+   */
+  public void add(AbstractMessageTask request) {
+    if (request instanceof GetBlockTxnMessageTask) {
+      this.transactionRequests.add(request, getCurrentTime());
+    } else if (request instanceof GetChunkMessageTask) {
+      this.blockRequests.add(request, ((GetChunkMessageTask) request).getDownloadStart());
+    } else if (request instanceof RecMessageTask) {
+      this.blockRequests.add(request, getCurrentTime());
+    } else {
+      throw new IllegalArgumentException(
+          "Unexpected request " + request.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Removes the request to serve next.
+   *
+   * @return the request, or null if the queue is empty
+   */
+  public AbstractMessageTask poll() {
+    AbstractMessageTask request = this.transactionRequests.poll();
+    return request != null ? request : this.blockRequests.poll();
+  }
+
+  /**
+   * Checks if the queue is empty.
+   *
+   * @return true if no request waits
+   */
+  public boolean isEmpty() {
+    return this.transactionRequests.size == 0 && this.blockRequests.size == 0;
+  }
+
+  /**
+   * Removes all requests, passing each of them to the provided action first.
+   *
+   * @param action the action
+   */
+  public void clear(Consumer<AbstractMessageTask> action) {
+    for (AbstractMessageTask request = this.poll(); request != null; request = this.poll()) {
+      action.accept(request);
+    }
+  }
+
+  /**
+   * Gets the block of a request.
+   *
+   * @param request the request
+   * @return the requested block
+   */
+  static Block getBlock(AbstractMessageTask request) {
+    if (request instanceof GetBlockTxnMessageTask) {
+      return ((GetBlockTxnMessageTask) request).getBlock();
+    } else if (request instanceof GetChunkMessageTask) {
+      return ((GetChunkMessageTask) request).getBlock();
+    }
+    return ((RecMessageTask) request).getBlock();
+  }
+
+  /**
+   * A ring buffer of requests ordered by block height and rank, a power of two long.
+   */
+  private static final class Ring {
+    private AbstractMessageTask[] requests = new AbstractMessageTask[8];
+    private long[] ranks = new long[8];
+    private int head = 0;
+    private int size = 0;
+
+    private void add(AbstractMessageTask request, long rank) {
+      if (this.size == this.requests.length) {
+        this.grow();
+      }
+      int mask = this.requests.length - 1;
+      int height = getBlock(request).getHeight();
+      // Move requests for higher blocks, or later ranks of the same height, one slot towards the
+      // tail
+      int position = this.size;
+      while (position > 0) {
+        int previous = (this.head + position - 1) & mask;
+        int previousHeight = getBlock(this.requests[previous]).getHeight();
+        if (previousHeight < height || previousHeight == height && this.ranks[previous] <= rank) {
+          break;
+        }
+        this.requests[(previous + 1) & mask] = this.requests[previous];
+        this.ranks[(previous + 1) & mask] = this.ranks[previous];
+        position--;
+      }
+      this.requests[(this.head + position) & mask] = request;
+      this.ranks[(this.head + position) & mask] = rank;
+      this.size++;
+    }
+
+    private AbstractMessageTask poll() {
+      if (this.size == 0) {
+        return null;
+      }
+      AbstractMessageTask request = this.requests[this.head];
+      this.requests[this.head] = null;
+      this.head = (this.head + 1) & (this.requests.length - 1);
+      this.size--;
+      return request;
+    }
+
+    private void grow() {
+      AbstractMessageTask[] grown = new AbstractMessageTask[2 * this.requests.length];
+      long[] grownRanks = new long[grown.length];
+      for (int i = 0; i < this.size; i++) {
+        grown[i] = this.requests[(this.head + i) & (this.requests.length - 1)];
+        grownRanks[i] = this.ranks[(this.head + i) & (this.requests.length - 1)];
+      }
+      this.requests = grown;
+      this.ranks = grownRanks;
+      this.head = 0;
+    }
+  }
+}
@@ -8,6 +8,8 @@ import simblock.block.Block;
 import simblock.block.Coinage;
 import simblock.block.SamplePoSBlock;
 import simblock.node.Node;
+import simblock.node.routing.TwoTierTable;
+import simblock.simulator.BlockPruner;
 import simblock.simulator.Main;
 import simblock.simulator.statistics.AlgorandStatistics;
 import simblock.task.SampleStakingTask;
@@ -22,13 +24,16 @@ import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static simblock.settings.SimulationConfiguration.BLOCK_SIZE;
-import static simblock.settings.SimulationConfiguration.NUM_OF_NODES;
 import static simblock.simulator.Main.OUT_JSON_FILE;
 import static simblock.simulator.Main.random;
-import static simblock.simulator.Network.getBandwidth;
+import static simblock.simulator.Network.getTransferDelay;
+import static simblock.simulator.Simulator.getNode;
+import static simblock.simulator.Simulator.getSimulatedNodes;
 import static simblock.simulator.Timer.getCurrentTime;
 import static simblock.simulator.Timer.putTask;
+import static simblock.simulator.Topology.getDegree;
+import static simblock.simulator.Topology.getOffset;
+import static simblock.simulator.Topology.getTargets;
 
 public class AlgorandConsensus extends AbstractConsensusAlgo {
 
@@ -111,6 +116,11 @@ public class AlgorandConsensus extends AbstractConsensusAlgo {
         int receivedBlockHeight = receivedBlock.getHeight();
         SamplePoSBlock receivedBlockParent = receivedBlockHeight == 0 ? null :
                 (SamplePoSBlock) receivedBlock.getBlockWithHeight(receivedBlockHeight - 1);
+        if (receivedBlockHeight > 0 && receivedBlockParent == null) {
+            // only blocks off the final chain are dropped by pruning, so the block extends a branch
+            // that forked below the final block
+            return false;
+        }
 
         return (
                 receivedBlockHeight == 0 ||
@@ -283,7 +293,8 @@ public class AlgorandConsensus extends AbstractConsensusAlgo {
         if(mostCertVotedBlock.first && mostCertVotedBlock.second != null) {
             log("Reached halting condition. Adding block with id="+mostCertVotedBlock.second.getId()+" to chain. Advancing round.");
             // if there is a block with more than REQUIRED_VOTES certvotes, then consensus was reached
-            // and that block can be added to the chain
+            // and that block can be added to the chain, it is final and the history below it can be pruned
+            BlockPruner.addFinalBlock(mostCertVotedBlock.second);
             getSelfNode().addToChain(mostCertVotedBlock.second);
             AlgorandStatistics.getInstance().consensusReached(getSelfNode().getNodeID(), getCurrentTime(), round);
             advanceRound();
@@ -500,9 +511,11 @@ public class AlgorandConsensus extends AbstractConsensusAlgo {
 
     // Create a message receive task for every neighbor node
     private void broadcastProtocolMessage(AlgorandMsgType type, int round, int period, int step, Block proposal) {
-        for (Node to : getSelfNode().getRoutingTable().getNeighbors()) {
-            long bandwidth = getBandwidth(getSelfNode().getRegion(), to.getRegion()); // copied from Node "sendNextBlockMessage"
-            long delay = BLOCK_SIZE * 8 / (bandwidth / 1000) + 2; // copied from Node "sendNextBlockMessage"
+        int[] targets = getTargets();
+        int offset = getOffset(getSelfNode().getNodeID());
+        for (int i = offset; i < offset + getDegree(getSelfNode().getNodeID()); i++) {
+            Node to = getNode(targets[i]);
+            long delay = getMessageDelay(type, to);
             putTask(new AlgorandMsgTask(getSelfNode(), to, type, round, period, step, proposal, delay, getSelfNode()));
         }
         // also stores its own message, regardless of whether it is a vote or proposal
@@ -510,14 +523,30 @@ public class AlgorandConsensus extends AbstractConsensusAlgo {
     }
 
     private void propagateMessage(AlgorandMsgTask m) {
+        boolean twoTier = getSelfNode().getRoutingTable() instanceof TwoTierTable;
+        // in a two-tier network only relays forward messages, and own messages were already sent by broadcastProtocolMessage
+        if (twoTier && (m.getFrom() == getSelfNode() || !((TwoTierTable) getSelfNode().getRoutingTable()).isRelay())) {
+            return;
+        }
         // propagate a received message to its neighbors
-        for (Node to : getSelfNode().getRoutingTable().getNeighbors()) {
-            long bandwidth = getBandwidth(getSelfNode().getRegion(), to.getRegion()); // copied from Node "sendNextBlockMessage"
-            long delay = BLOCK_SIZE * 8 / (bandwidth / 1000) + 2; // copied from Node "sendNextBlockMessage"
+        int[] targets = getTargets();
+        int offset = getOffset(getSelfNode().getNodeID());
+        for (int i = offset; i < offset + getDegree(getSelfNode().getNodeID()); i++) {
+            Node to = getNode(targets[i]);
+            // a relay does not echo a message to the neighbor it came from or to its author
+            if (twoTier && (to == m.getFrom() || to == m.getVoteFrom())) {
+                continue;
+            }
+            long delay = getMessageDelay(m.getType(), to);
             putTask(new AlgorandMsgTask(getSelfNode(), to, m.getType(), m.getRound(), m.getPeriod(), m.getStep(), m.getBlock(), delay, m.getVoteFrom()));
         }
     }
 
+    // Transmission delay of a message of the given type to a neighbor, plus the processing time used in Node "sendNextBlockMessage"
+    private long getMessageDelay(AlgorandMsgType type, Node to) {
+        return getTransferDelay(AlgorandMsgTask.getMessageSize(type), getSelfNode(), to) + 2;
+    }
+
 
     // More accurate sorition, replicating the real one
     // https://github.com/algorand/go-algorand/blob/18d438785c12bd43731bff6f9fd35b44c8acbc48/data/committee/sortition/sortition.go
@@ -738,7 +767,7 @@ public class AlgorandConsensus extends AbstractConsensusAlgo {
         OUT_JSON_FILE.print("{");
         OUT_JSON_FILE.print("\"kind\":\"parameters\",");
         OUT_JSON_FILE.print("\"content\":{");
-        OUT_JSON_FILE.print("\"number-of-nodes\":" + NUM_OF_NODES + ",");
+        OUT_JSON_FILE.print("\"number-of-nodes\":" + getSimulatedNodes().size() + ",");
         OUT_JSON_FILE.print("\"lambda\":" + LAMBDA + ",");
         OUT_JSON_FILE.print("\"number-of-proposers\":" + NUM_PROPOSERS + ",");
         OUT_JSON_FILE.print("\"block-creation-chance\":" + BLOCK_CREATION_CHANCE + ",");
@@ -72,6 +72,11 @@ public class ProofOfWork extends AbstractConsensusAlgo {
     int receivedBlockHeight = receivedBlock.getHeight();
     ProofOfWorkBlock receivedBlockParent = receivedBlockHeight == 0 ? null :
         (ProofOfWorkBlock) receivedBlock.getBlockWithHeight(receivedBlockHeight - 1);
+    if (receivedBlockHeight > 0 && receivedBlockParent == null) {
+      // Only blocks off the final chain are dropped by pruning, so the block extends a branch
+      // that forked below the final block
+      return false;
+    }
 
     //TODO - dangerous to split due to short circuit operators being used, refactor?
     return (
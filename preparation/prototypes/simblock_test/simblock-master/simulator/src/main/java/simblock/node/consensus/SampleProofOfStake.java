@@ -62,6 +62,11 @@ public class SampleProofOfStake extends AbstractConsensusAlgo {
     int receivedBlockHeight = receivedBlock.getHeight();
     SamplePoSBlock receivedBlockParent = receivedBlockHeight == 0 ? null :
         (SamplePoSBlock) receivedBlock.getBlockWithHeight(receivedBlockHeight - 1);
+    if (receivedBlockHeight > 0 && receivedBlockParent == null) {
+      // Only blocks off the final chain are dropped by pruning, so the block extends a branch
+      // that forked below the final block
+      return false;
+    }
 
     //TODO - dangerous to split due to short circuit operators being used, refactor?
     return (
@@ -16,11 +16,18 @@
 
 package simblock.node.routing;
 
-import java.util.ArrayList;
+import static simblock.simulator.Main.OUT_JSON_FILE;
+import static simblock.simulator.Simulator.getNode;
+import static simblock.simulator.Timer.getCurrentTime;
+
+import java.util.Arrays;
+import java.util.List;
 import simblock.node.Node;
+import simblock.simulator.Topology;
 
 /**
- * An abstraction of the a routing table used by a {@link Node}.
+ * An abstraction of the a routing table used by a {@link Node}. Routing tables keep the links of
+ * their node in the row of the node in the {@link Topology}.
  */
 public abstract class AbstractRoutingTable {
   private final Node selfNode;
@@ -68,11 +75,49 @@ public abstract class AbstractRoutingTable {
   public abstract void initTable();
 
   /**
-   * Gets neighbors.
+   * Restores the state of the table after its row was loaded into the {@link Topology} from a
+   * snapshot, instead of being built by {@link #initTable()}.
+   */
+  public void restoreTable() {
+    int selfID = this.selfNode.getNodeID();
+    int[] targets = Topology.getTargets();
+    int offset = Topology.getOffset(selfID);
+    for (int i = offset; i < offset + Topology.getDegree(selfID); i++) {
+      printAddLink(targets[i]);
+    }
+  }
+
+  /**
+   * Removes the links of the self node when it leaves the network, see {@link
+   * simblock.simulator.ChurnEngine}. Drops the outbound links of the self node, tables with
+   * inbound links override this to release them as well.
+   */
+  public void leaveTable() {
+    int selfID = this.selfNode.getNodeID();
+    int offset = Topology.getOffset(selfID);
+    int[] neighbors = Arrays.copyOfRange(Topology.getTargets(), offset,
+                                         offset + Topology.getDegree(selfID));
+    for (int neighbor : neighbors) {
+      this.removeNeighbor(getNode(neighbor));
+    }
+  }
+
+  /**
+   * Opens the links of the self node when it rejoins the network after {@link #leaveTable()}.
+   * Initializes the table again by default.
+   */
+  public void rejoinTable() {
+    this.initTable();
+  }
+
+  /**
+   * Gets neighbors, a view of the row of the self node in the {@link Topology}.
    *
    * @return the neighbors
    */
-  public abstract ArrayList<Node> getNeighbors();
+  public List<Node> getNeighbors() {
+    return Topology.getNeighbors(this.selfNode.getNodeID());
+  }
 
   /**
    * Add a neighbor to the list of neighbors.
@@ -118,4 +163,30 @@ public abstract class AbstractRoutingTable {
   //TODO unclear what this does
   public void acceptBlock() {
   }
+
+  //TODO add example
+  protected void printAddLink(int endNodeID) {
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"add-link\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
+    OUT_JSON_FILE.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
+    OUT_JSON_FILE.print("\"end-node-id\":" + endNodeID);
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
+
+  //TODO add example
+  protected void printRemoveLink(int endNodeID) {
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"remove-link\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
+    OUT_JSON_FILE.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
+    OUT_JSON_FILE.print("\"end-node-id\":" + endNodeID);
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
 }
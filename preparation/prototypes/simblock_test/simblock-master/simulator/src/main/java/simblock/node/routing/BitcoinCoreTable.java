@@ -16,16 +16,28 @@
 
 package simblock.node.routing;
 
-import static simblock.simulator.Main.OUT_JSON_FILE;
 import static simblock.simulator.Main.random;
 import static simblock.simulator.Simulator.getSimulatedNodes;
-import static simblock.simulator.Timer.getCurrentTime;
+import static simblock.simulator.Simulator.getNode;
+import static simblock.simulator.Topology.FLAG_OUTBOUND;
+import static simblock.simulator.Topology.addEdge;
+import static simblock.simulator.Topology.countEdges;
+import static simblock.simulator.Topology.getDegree;
+import static simblock.simulator.Topology.getEdgeFlags;
+import static simblock.simulator.Topology.getFlags;
+import static simblock.simulator.Topology.getOffset;
+import static simblock.simulator.Topology.getTargets;
+import static simblock.simulator.Topology.indexOf;
+import static simblock.simulator.Topology.removeEdge;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.stream.IntStream;
 
 import simblock.node.Node;
+import simblock.simulator.ChurnEngine;
 
 /**
  * The implementation of the {@link AbstractRoutingTable} representing the Bitcoin core routing
@@ -35,14 +47,25 @@ import simblock.node.Node;
 public class BitcoinCoreTable extends AbstractRoutingTable {
 
   /**
-   * The list of outbound connections.
+   * The number of candidates sampled per outbound connection.
    */
-  private final ArrayList<Node> outbound = new ArrayList<>();
+  public static final int CANDIDATE_OVERSAMPLING = 2;
 
   /**
-   * The list of inbound connections.
+   * The number of candidates sampled on top of those per outbound connection.
    */
-  private final ArrayList<Node> inbound = new ArrayList<>();
+  public static final int EXTRA_CANDIDATES = 8;
+
+  /**
+   * The number of outbound connections.
+   */
+  private int numOutbound = 0;
+
+  /**
+   * The random source of re-dials, seeded from the self node id when first needed so that it
+   * does not depend on how the network was built.
+   */
+  private Random redialRandom = null;
 
   /**
    * Instantiates a new Bitcoin core table.
@@ -55,44 +78,194 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
 
 
   /**
-   * Gets all known outbound and inbound nodes.
+   * Initializes a new BitcoinCore routing table. Candidates are sampled at random from the pool
+   * of all available nodes, oversampling since candidates that already link to the self node are
+   * rejected, to fill the table using the allowed outbound connections amount.
+   */
+  //TODO this should be done using the bootstrap node
+  public void initTable() {
+    int size = getSimulatedNodes().size();
+    this.fillOutbound(
+        this.orderCandidates(sampleCandidates(random, size, this.getCandidateCount(), -1)), random);
+  }
+
+  /**
+   * Gets the number of outbound candidates sampled when the table is initialized. Oversamples,
+   * since candidates that already link to the self node are rejected.
    *
-   * @return a list of known neighbors
+   * @return the number of candidates
    */
-  public ArrayList<Node> getNeighbors() {
-    ArrayList<Node> neighbors = new ArrayList<>();
-    neighbors.addAll(outbound);
-    neighbors.addAll(inbound);
-    return neighbors;
+  protected int getCandidateCount() {
+    return CANDIDATE_OVERSAMPLING * this.getNumConnection() + EXTRA_CANDIDATES;
   }
 
   /**
-   * Initializes a new BitcoinCore routing table. From a pool of
-   * all available nodes, choose candidates at random and
-   * fill the table using the allowed outbound connections
-   * amount.
+   * Orders the sampled outbound candidates by preference, the table connects to them in the
+   * returned order. Keeps the random sample order. May be called concurrently for different
+   * tables by {@link #initTables(List, long)}.
+   *
+   * @param candidates the indexes of the candidates in the simulated nodes list
+   * @return the ordered candidates
    */
-  //TODO this should be done using the bootstrap node
-  public void initTable() {
-    ArrayList<Integer> candidates = new ArrayList<>();
-    for (int i = 0; i < getSimulatedNodes().size(); i++) {
-      candidates.add(i);
+  protected int[] orderCandidates(int[] candidates) {
+    return candidates;
+  }
+
+  /**
+   * Initializes the BitcoinCore routing tables of all provided nodes. Every node first samples
+   * and orders its outbound candidates in parallel, each from its own random source seeded from
+   * the provided seed and its node id. The links are then added sequentially in node order, so
+   * the resulting topology does not depend on the number of threads.
+   *
+   * @param nodes the nodes, all using a BitcoinCore routing table or a subclass of it
+   * @param seed  the seed of the random sources
+   */
+  public static void initTables(List<Node> nodes, long seed) {
+    Random[] randoms = new Random[nodes.size()];
+    int[][] candidates = new int[nodes.size()][];
+    IntStream.range(0, nodes.size()).parallel().forEach(index -> {
+      Node node = nodes.get(index);
+      BitcoinCoreTable table = (BitcoinCoreTable) node.getRoutingTable();
+      randoms[index] = new Random(seed + node.getNodeID());
+      candidates[index] = table.orderCandidates(
+          sampleCandidates(randoms[index], nodes.size(), table.getCandidateCount(), index));
+    });
+    for (int index = 0; index < nodes.size(); index++) {
+      BitcoinCoreTable table = (BitcoinCoreTable) nodes.get(index).getRoutingTable();
+      table.fillOutbound(candidates[index], randoms[index]);
     }
-    Collections.shuffle(candidates);
+  }
+
+  /**
+   * Adds outbound connections to the provided candidates, in order, and then to further
+   * candidates sampled from the provided random source until the table is full or no candidate
+   * is left.
+   *
+   * @param candidates the indexes of the first candidates in the simulated nodes list
+   * @param rnd        the random source of further candidates
+   */
+  protected void fillOutbound(int[] candidates, Random rnd) {
+    List<Node> nodes = getSimulatedNodes();
     for (int candidate : candidates) {
-      if (this.outbound.size() < this.getNumConnection()) {
-        this.addNeighbor(getSimulatedNodes().get(candidate));
+      if (this.numOutbound >= this.getNumConnection()) {
+        return;
+      }
+      this.addNeighbor(nodes.get(candidate));
+    }
+    int missing = this.getNumConnection() - this.numOutbound;
+    if (missing > 0) {
+      // Every node but the self node is a candidate, tried in random order
+      for (int candidate : sampleCandidates(rnd, nodes.size(), nodes.size(), -1)) {
+        if (this.numOutbound >= this.getNumConnection()) {
+          return;
+        }
+        this.addNeighbor(nodes.get(candidate));
+      }
+    }
+  }
+
+  /**
+   * Samples distinct indexes out of the provided number of nodes, excluding one index. Sparse
+   * samples are drawn by rejection against a hash set in time proportional to the sample size,
+   * dense samples by a partial Fisher-Yates shuffle.
+   *
+   * @param rnd     the random source
+   * @param size    the number of nodes
+   * @param count   the number of indexes to sample
+   * @param exclude the index to exclude, or -1
+   * @return the sampled indexes, in random order
+   */
+  protected static int[] sampleCandidates(Random rnd, int size, int count, int exclude) {
+    int available = exclude >= 0 ? size - 1 : size;
+    count = Math.min(count, available);
+    if (2 * count < available) {
+      HashSet<Integer> sampled = new HashSet<>();
+      int[] result = new int[count];
+      int found = 0;
+      while (found < count) {
+        int candidate = rnd.nextInt(size);
+        if (candidate != exclude && sampled.add(candidate)) {
+          result[found++] = candidate;
+        }
+      }
+      return result;
+    }
+    int[] pool = new int[available];
+    for (int i = 0, candidate = 0; candidate < size; candidate++) {
+      if (candidate != exclude) {
+        pool[i++] = candidate;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      int j = i + rnd.nextInt(available - i);
+      int swap = pool[i];
+      pool[i] = pool[j];
+      pool[j] = swap;
+    }
+    return Arrays.copyOf(pool, count);
+  }
+
+  /**
+   * Drops the outbound and inbound links of the self node. Every neighbor that loses an outbound
+   * connection re-dials one new peer, so the network is repaired locally.
+   */
+  @Override
+  public void leaveTable() {
+    int selfID = getSelfNode().getNodeID();
+    int offset = getOffset(selfID);
+    int degree = getDegree(selfID);
+    int[] neighbors = Arrays.copyOfRange(getTargets(), offset, offset + degree);
+    int[] edgeFlags = Arrays.copyOfRange(getFlags(), offset, offset + degree);
+    for (int i = 0; i < neighbors.length; i++) {
+      Node neighbor = getNode(neighbors[i]);
+      if ((edgeFlags[i] & FLAG_OUTBOUND) != 0) {
+        this.removeNeighbor(neighbor);
       } else {
-        break;
+        BitcoinCoreTable table = (BitcoinCoreTable) neighbor.getRoutingTable();
+        if (table.removeNeighbor(getSelfNode())) {
+          table.redial();
+        }
       }
     }
   }
 
+  /**
+   * Replaces one lost outbound connection by a peer sampled from the random source of the table.
+   * Tries candidates in random order until one accepts, every other node if need be.
+   */
+  private void redial() {
+    if (this.numOutbound >= this.getNumConnection()) {
+      return;
+    }
+    if (this.redialRandom == null) {
+      this.redialRandom = new Random(getSelfNode().getNodeID());
+    }
+    List<Node> nodes = getSimulatedNodes();
+    for (int candidate : sampleCandidates(this.redialRandom, nodes.size(),
+                                          this.getCandidateCount(), -1)) {
+      if (this.addNeighbor(nodes.get(candidate))) {
+        return;
+      }
+    }
+    for (int candidate : sampleCandidates(this.redialRandom, nodes.size(), nodes.size(), -1)) {
+      if (this.addNeighbor(nodes.get(candidate))) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void restoreTable() {
+    super.restoreTable();
+    this.numOutbound = countEdges(getSelfNode().getNodeID(), FLAG_OUTBOUND);
+  }
+
   /**
    * Adds the provided node to the list of outbound connections of self node.The provided node
    * will not be added if it is the self node, it exists as an outbound connection of the self node,
-   * it exists as an inbound connection of the self node or the self node does not allow for
-   * additional outbound connections. Otherwise, the self node will add the provided node to the
+   * it exists as an inbound connection of the self node, it is not part of the network (see
+   * {@link simblock.simulator.ChurnEngine}) or the self node does not allow for additional
+   * outbound connections. Otherwise, the self node will add the provided node to the
    * list of outbound connections and the provided node will add the self node to the list of
    * inbound connections.
    *
@@ -100,15 +273,18 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state
    */
   public boolean addNeighbor(Node node) {
-    if (node == getSelfNode() || this.outbound.contains(node) || this.inbound.contains(
-        node) || this.outbound.size() >= this.getNumConnection()) {
+    int selfID = getSelfNode().getNodeID();
+    if (node == getSelfNode() || indexOf(selfID, node.getNodeID()) >= 0
+        || this.numOutbound >= this.getNumConnection() || !ChurnEngine.isOnline(node)) {
       return false;
-    } else if (this.outbound.add(node) && node.getRoutingTable().addInbound(getSelfNode())) {
-      printAddLink(node);
+    }
+    addEdge(selfID, node.getNodeID(), FLAG_OUTBOUND);
+    this.numOutbound++;
+    if (node.getRoutingTable().addInbound(getSelfNode())) {
+      printAddLink(node.getNodeID());
       return true;
-    } else {
-      return false;
     }
+    return false;
   }
 
   /**
@@ -119,8 +295,15 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state of the operation
    */
   public boolean removeNeighbor(Node node) {
-    if (this.outbound.remove(node) && node.getRoutingTable().removeInbound(getSelfNode())) {
-      printRemoveLink(node);
+    int selfID = getSelfNode().getNodeID();
+    int index = indexOf(selfID, node.getNodeID());
+    if (index < 0 || (getEdgeFlags(selfID, index) & FLAG_OUTBOUND) == 0) {
+      return false;
+    }
+    removeEdge(selfID, node.getNodeID());
+    this.numOutbound--;
+    if (node.getRoutingTable().removeInbound(getSelfNode())) {
+      printRemoveLink(node.getNodeID());
       return true;
     }
     return false;
@@ -133,11 +316,9 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state of the operation
    */
   public boolean addInbound(Node from) {
-    if (this.inbound.add(from)) {
-      printAddLink(from);
-      return true;
-    }
-    return false;
+    addEdge(getSelfNode().getNodeID(), from.getNodeID(), 0);
+    printAddLink(from.getNodeID());
+    return true;
   }
 
   /**
@@ -147,37 +328,14 @@ public class BitcoinCoreTable extends AbstractRoutingTable {
    * @return the success state of the operation
    */
   public boolean removeInbound(Node from) {
-    if (this.inbound.remove(from)) {
-      printRemoveLink(from);
-      return true;
+    int selfID = getSelfNode().getNodeID();
+    int index = indexOf(selfID, from.getNodeID());
+    if (index < 0 || (getEdgeFlags(selfID, index) & FLAG_OUTBOUND) != 0) {
+      return false;
     }
-    return false;
-  }
-
-  //TODO add example
-  private void printAddLink(Node endNode) {
-    OUT_JSON_FILE.print("{");
-    OUT_JSON_FILE.print("\"kind\":\"add-link\",");
-    OUT_JSON_FILE.print("\"content\":{");
-    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
-    OUT_JSON_FILE.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
-    OUT_JSON_FILE.print("\"end-node-id\":" + endNode.getNodeID());
-    OUT_JSON_FILE.print("}");
-    OUT_JSON_FILE.print("},");
-    OUT_JSON_FILE.flush();
-  }
-
-  //TODO add example
-  private void printRemoveLink(Node endNode) {
-    OUT_JSON_FILE.print("{");
-    OUT_JSON_FILE.print("\"kind\":\"remove-link\",");
-    OUT_JSON_FILE.print("\"content\":{");
-    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
-    OUT_JSON_FILE.print("\"begin-node-id\":" + getSelfNode().getNodeID() + ",");
-    OUT_JSON_FILE.print("\"end-node-id\":" + endNode.getNodeID());
-    OUT_JSON_FILE.print("}");
-    OUT_JSON_FILE.print("},");
-    OUT_JSON_FILE.flush();
+    removeEdge(selfID, from.getNodeID());
+    printRemoveLink(from.getNodeID());
+    return true;
   }
 
 }
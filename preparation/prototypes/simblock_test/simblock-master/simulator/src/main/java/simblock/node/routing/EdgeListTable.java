@@ -0,0 +1,347 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node.routing;
+
+import static simblock.settings.NetworkConfiguration.REGION_LIST;
+import static simblock.settings.SimulationConfiguration.CBR_USAGE_RATE;
+import static simblock.settings.SimulationConfiguration.CHURN_NODE_RATE;
+import static simblock.simulator.Main.createNode;
+import static simblock.simulator.Main.genMiningPower;
+import static simblock.simulator.Main.printAddNode;
+import static simblock.simulator.Main.random;
+import static simblock.simulator.Network.getRegionDistribution;
+import static simblock.simulator.Network.initNode;
+import static simblock.simulator.Network.setBandwidth;
+import static simblock.simulator.Simulator.addNode;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+import static simblock.simulator.Topology.FLAG_OUTBOUND;
+import static simblock.simulator.Topology.addEdge;
+import static simblock.simulator.Topology.indexOf;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import simblock.node.Node;
+
+/**
+ * The implementation of the {@link BitcoinCoreTable} whose links are read from an edge list, for
+ * instance a crawled peer graph, instead of being generated. The nodes of the simulation are the
+ * nodes of the edge list, see {@link #loadNetwork(URI)}. Links added or removed later, for
+ * instance when a churn node re-dials its peers, follow the rules of the BitcoinCore routing
+ * table.
+ */
+@SuppressWarnings("unused")
+public class EdgeListTable extends BitcoinCoreTable {
+
+  /**
+   * The size of the read buffer.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The region names as bytes, to match region columns without decoding them.
+   */
+  private static final byte[][] REGION_NAMES = REGION_LIST.stream().map(
+      region -> region.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+
+  /**
+   * Instantiates a new Edge list table.
+   *
+   * @param selfNode the self node
+   */
+  public EdgeListTable(Node selfNode) {
+    super(selfNode);
+  }
+
+  /**
+   * Creates the nodes and links of an edge list. Each line has the format
+   *
+   * <p><em>from to [region [bandwidth]]</em>
+   *
+   * <p>meaning that node <em>from</em> opened an outbound connection to node <em>to</em>. Node
+   * ids are non-negative integers and are numbered 1 to <em>n</em> in the simulation in order of
+   * first appearance. The optional columns set the region, by name or index, and the upload and
+   * download bandwidth in bit per second of node <em>from</em>. Nodes without a region are
+   * assigned one following the region distribution, nodes without a bandwidth use the bandwidth
+   * of their region. Self links and links between already linked nodes are skipped. Empty lines
+   * and text after # are ignored.
+   *
+   * <p>The file is streamed through a buffered channel and the links are written to the {@link
+   * simblock.simulator.Topology} as they are read, only per-node attributes are kept aside.
+   *
+   * @param uri the location of the edge list
+   * @throws UncheckedIOException if the edge list cannot be read
+   */
+  public static void loadNetwork(URI uri) {
+    EdgeListReader reader = new EdgeListReader();
+    try (FileChannel channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ)) {
+      reader.read(channel);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Cannot read the edge list " + uri, ex);
+    }
+
+    double[] regionDistribution = getRegionDistribution();
+    for (int id = 1; id <= reader.numNodes; id++) {
+      int region = reader.regions[id];
+      if (region < 0) {
+        region = drawRegion(regionDistribution);
+      }
+      boolean useCBR = random.nextDouble() < CBR_USAGE_RATE;
+      boolean isChurnNode = random.nextDouble() < CHURN_NODE_RATE;
+      Node node = createNode(id, Math.max(reader.numOutbound[id], 1), region, genMiningPower(),
+                             useCBR, isChurnNode);
+      addNode(node);
+      initNode(node);
+      if (reader.bandwidths[id] > 0) {
+        setBandwidth(id, reader.bandwidths[id]);
+      }
+      printAddNode(node);
+    }
+    for (Node node : getSimulatedNodes()) {
+      node.getRoutingTable().restoreTable();
+    }
+  }
+
+  /**
+   * Draws a region following the provided distribution.
+   *
+   * @param distribution the share of nodes of every region
+   * @return the region index
+   */
+  private static int drawRegion(double[] distribution) {
+    double r = random.nextDouble();
+    double cumulative = 0;
+    for (int region = 0; region < distribution.length - 1; region++) {
+      cumulative += distribution[region];
+      if (r < cumulative) {
+        return region;
+      }
+    }
+    return distribution.length - 1;
+  }
+
+  /**
+   * Streams the lines of an edge list, tokenizing bytes in place.
+   */
+  private static final class EdgeListReader {
+
+    /**
+     * Open addressing map from edge list ids to simulation node ids, -1 marks a free slot.
+     */
+    private int[] mapKeys = new int[1024];
+    private int[] mapValues = new int[1024];
+
+    /**
+     * The number of nodes read so far.
+     */
+    private int numNodes = 0;
+
+    /**
+     * Region, bandwidth and number of outbound links of every node, indexed by node id.
+     */
+    private int[] regions = new int[1024];
+    private long[] bandwidths = new long[1024];
+    private int[] numOutbound = new int[1024];
+
+    /**
+     * The current token, the column of the current token and the values of the current line.
+     */
+    private final byte[] token = new byte[64];
+    private int tokenLength = 0;
+    private int column = 0;
+    private final long[] values = new long[4];
+    private long lineNumber = 1;
+
+    private EdgeListReader() {
+      Arrays.fill(this.mapKeys, -1);
+      Arrays.fill(this.regions, -1);
+    }
+
+    private void read(FileChannel channel) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      boolean comment = false;
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          byte b = buffer.get();
+          if (b == '\n') {
+            this.endToken();
+            this.endLine();
+            comment = false;
+          } else if (comment) {
+            continue;
+          } else if (b == '#') {
+            this.endToken();
+            comment = true;
+          } else if (b == ' ' || b == '\t' || b == '\r' || b == ',') {
+            this.endToken();
+          } else if (this.tokenLength < this.token.length) {
+            this.token[this.tokenLength++] = b;
+          } else {
+            throw new IllegalArgumentException("Token too long on line " + this.lineNumber);
+          }
+        }
+        buffer.clear();
+      }
+      this.endToken();
+      this.endLine();
+    }
+
+    /**
+     * Parses the current token into the value of its column.
+     */
+    private void endToken() {
+      if (this.tokenLength == 0) {
+        return;
+      }
+      if (this.column >= this.values.length) {
+        throw new IllegalArgumentException("Too many columns on line " + this.lineNumber);
+      }
+      this.values[this.column] = this.column == 2 ? this.parseRegion() : this.parseNumber();
+      this.column++;
+      this.tokenLength = 0;
+    }
+
+    /**
+     * Adds the link and the node attributes of the current line.
+     */
+    private void endLine() {
+      if (this.column == 1) {
+        throw new IllegalArgumentException("Missing end node on line " + this.lineNumber);
+      }
+      if (this.column >= 2) {
+        if (this.values[0] > Integer.MAX_VALUE || this.values[1] > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("Node id out of range on line " + this.lineNumber);
+        }
+        int from = this.getNodeID((int) this.values[0]);
+        int to = this.getNodeID((int) this.values[1]);
+        if (this.column >= 3) {
+          this.regions[from] = (int) this.values[2];
+        }
+        if (this.column >= 4) {
+          this.bandwidths[from] = this.values[3];
+        }
+        // Links are undirected connections, the reverse direction is an inbound link
+        if (from != to && indexOf(from, to) < 0) {
+          addEdge(from, to, FLAG_OUTBOUND);
+          addEdge(to, from, 0);
+          this.numOutbound[from]++;
+        }
+      }
+      this.column = 0;
+      this.lineNumber++;
+    }
+
+    private long parseNumber() {
+      long value = 0;
+      for (int i = 0; i < this.tokenLength; i++) {
+        int digit = this.token[i] - '0';
+        if (digit < 0 || digit > 9) {
+          throw new IllegalArgumentException("Malformed number on line " + this.lineNumber);
+        }
+        value = 10 * value + digit;
+      }
+      return value;
+    }
+
+    private int parseRegion() {
+      for (int region = 0; region < REGION_NAMES.length; region++) {
+        if (this.tokenEquals(REGION_NAMES[region])) {
+          return region;
+        }
+      }
+      long region = this.parseNumber();
+      if (region >= REGION_NAMES.length) {
+        throw new IllegalArgumentException("Unknown region on line " + this.lineNumber);
+      }
+      return (int) region;
+    }
+
+    private boolean tokenEquals(byte[] name) {
+      if (name.length != this.tokenLength) {
+        return false;
+      }
+      for (int i = 0; i < name.length; i++) {
+        if (name[i] != this.token[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets the simulation node id of an edge list id, numbering new ids in order.
+     *
+     * @param key the edge list id
+     * @return the node id
+     */
+    private int getNodeID(int key) {
+      int mask = this.mapKeys.length - 1;
+      int slot = mix(key) & mask;
+      while (this.mapKeys[slot] != -1) {
+        if (this.mapKeys[slot] == key) {
+          return this.mapValues[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      int id = ++this.numNodes;
+      this.mapKeys[slot] = key;
+      this.mapValues[slot] = id;
+      if (id >= this.regions.length) {
+        int length = 2 * this.regions.length;
+        this.regions = Arrays.copyOf(this.regions, length);
+        Arrays.fill(this.regions, id, length, -1);
+        this.bandwidths = Arrays.copyOf(this.bandwidths, length);
+        this.numOutbound = Arrays.copyOf(this.numOutbound, length);
+      }
+      if (2 * this.numNodes > this.mapKeys.length) {
+        this.rehash();
+      }
+      return id;
+    }
+
+    private void rehash() {
+      int[] oldKeys = this.mapKeys;
+      int[] oldValues = this.mapValues;
+      this.mapKeys = new int[2 * oldKeys.length];
+      this.mapValues = new int[2 * oldKeys.length];
+      Arrays.fill(this.mapKeys, -1);
+      int mask = this.mapKeys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != -1) {
+          int slot = mix(oldKeys[i]) & mask;
+          while (this.mapKeys[slot] != -1) {
+            slot = (slot + 1) & mask;
+          }
+          this.mapKeys[slot] = oldKeys[i];
+          this.mapValues[slot] = oldValues[i];
+        }
+      }
+    }
+
+    private static int mix(int key) {
+      int h = key * 0x9e3779b9;
+      return h ^ (h >>> 16);
+    }
+  }
+}
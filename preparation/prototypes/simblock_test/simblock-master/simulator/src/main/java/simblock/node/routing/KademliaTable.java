@@ -0,0 +1,524 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node.routing;
+
+import static simblock.simulator.Main.random;
+import static simblock.simulator.Simulator.getNode;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+import static simblock.simulator.Timer.putTask;
+import static simblock.simulator.Topology.FLAG_OUTBOUND;
+import static simblock.simulator.Topology.addEdge;
+import static simblock.simulator.Topology.getDegree;
+import static simblock.simulator.Topology.getOffset;
+import static simblock.simulator.Topology.getTargets;
+import static simblock.simulator.Topology.indexOf;
+import static simblock.simulator.Topology.removeEdge;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import simblock.node.Node;
+import simblock.simulator.ChurnEngine;
+import simblock.simulator.FaultInjector;
+import simblock.task.BucketRefreshTask;
+
+/**
+ * The implementation of the {@link AbstractRoutingTable} representing a Kademlia routing table.
+ * Every node has a 64 bit key, contacts are kept in k-buckets by the highest bit in which their
+ * key differs from the key of the self node, and blocks are relayed to all bucket contacts.
+ *
+ * <p>The buckets are the row of the self node in the {@link simblock.simulator.Topology}, only
+ * the number of contacts of each bucket is kept here. Lookups are iterative and resolved
+ * instantly, they are control traffic and are not simulated as messages. The degree assigned to
+ * the node is not used, the number of contacts follows from the bucket size and the network
+ * size.
+ */
+public class KademliaTable extends AbstractRoutingTable {
+
+  /**
+   * The maximum number of contacts in a bucket, k.
+   */
+  public static final int BUCKET_SIZE = 8;
+
+  /**
+   * The number of contacts queried in parallel by a lookup, alpha.
+   */
+  public static final int LOOKUP_PARALLELISM = 3;
+
+  /**
+   * The interval between two bucket refreshes. (unit: millisecond)
+   */
+  public static final long REFRESH_INTERVAL = 60 * 60 * 1000;
+
+  /**
+   * The number of buckets, one per key bit.
+   */
+  public static final int NUM_BUCKETS = 64;
+
+  /**
+   * The keys of all nodes, indexed by node id.
+   */
+  private static long[] keys = new long[0];
+
+  /**
+   * The number of contacts in each bucket.
+   */
+  private final byte[] bucketSizes = new byte[NUM_BUCKETS];
+
+  /**
+   * Instantiates a new Kademlia table, drawing the key of the self node.
+   *
+   * @param selfNode the self node
+   */
+  public KademliaTable(Node selfNode) {
+    super(selfNode);
+    int id = selfNode.getNodeID();
+    if (id >= keys.length) {
+      keys = Arrays.copyOf(keys, Math.max(id + 1, 2 * keys.length));
+    }
+    keys[id] = random.nextLong();
+  }
+
+  /**
+   * Gets the key of a node.
+   *
+   * @param nodeID the node id
+   * @return the key
+   */
+  public static long getKey(int nodeID) {
+    return keys[nodeID];
+  }
+
+  /**
+   * Sets the key of a node, for instance read from a snapshot.
+   *
+   * @param nodeID the node id
+   * @param key    the key
+   */
+  public static void setKey(int nodeID, long key) {
+    keys[nodeID] = key;
+  }
+
+  /**
+   * Schedules the periodic bucket refresh. The first refresh is offset by the key of the self
+   * node, which spreads the refreshes of all nodes over the refresh interval.
+   */
+  private void scheduleRefresh() {
+    long offset = Math.floorMod(getKey(getSelfNode().getNodeID()), REFRESH_INTERVAL);
+    putTask(new BucketRefreshTask(this, offset));
+  }
+
+  @Override
+  public void restoreTable() {
+    super.restoreTable();
+    int selfID = getSelfNode().getNodeID();
+    int[] targets = getTargets();
+    int offset = getOffset(selfID);
+    for (int i = offset; i < offset + getDegree(selfID); i++) {
+      this.bucketSizes[this.getBucket(getKey(targets[i]))]++;
+    }
+    this.scheduleRefresh();
+  }
+
+  /**
+   * Gets the bucket of a key, the index of the highest bit in which it differs from the key of
+   * the self node.
+   *
+   * @param key the key
+   * @return the bucket index, or -1 for the key of the self node
+   */
+  private int getBucket(long key) {
+    return 63 - Long.numberOfLeadingZeros(key ^ getKey(getSelfNode().getNodeID()));
+  }
+
+  /**
+   * Joins the network through a random bootstrap node: looks up the key of the self node, which
+   * fills the closest buckets and announces the node to the contacts it meets, then refreshes
+   * the remaining buckets.
+   */
+  public void initTable() {
+    this.rejoinTable();
+    this.scheduleRefresh();
+  }
+
+  /**
+   * Joins the network again through a random bootstrap node, like {@link #initTable()}. The
+   * periodic bucket refresh scheduled by {@link #initTable()} keeps running and skips the
+   * refreshes while the self node is offline. Contacts of other nodes pointing to an offline node
+   * are removed lazily, when a lookup queries them or a full bucket replaces them.
+   */
+  @Override
+  public void rejoinTable() {
+    List<Node> nodes = getSimulatedNodes();
+    Node bootstrap = nodes.isEmpty() ? null : nodes.get(random.nextInt(nodes.size()));
+    if (bootstrap != null && bootstrap != getSelfNode()) {
+      this.addContact(bootstrap.getNodeID());
+      this.lookup(getKey(getSelfNode().getNodeID()));
+    }
+    this.refreshBuckets();
+  }
+
+  /**
+   * Initializes the Kademlia routing tables of all provided nodes in the state a converged
+   * network reaches. The keys of bucket <em>i</em> of a node share all bits above <em>i</em>
+   * with the key of the node, so they form a contiguous range of the sorted keys and every
+   * bucket is filled with a random sample of that range. The samples are drawn in parallel, each
+   * node from its own random source seeded from the provided seed and its node id, and then
+   * added in node order.
+   *
+   * @param nodes the nodes, all using a Kademlia routing table
+   * @param seed  the seed of the random sources
+   */
+  public static void initTables(List<Node> nodes, long seed) {
+    int size = nodes.size();
+    long[] sortedKeys = new long[size];
+    for (int index = 0; index < size; index++) {
+      // Flip the sign bit so that signed order is the unsigned order of the keys
+      sortedKeys[index] = getKey(nodes.get(index).getNodeID()) ^ Long.MIN_VALUE;
+    }
+    Integer[] order = new Integer[size];
+    for (int index = 0; index < size; index++) {
+      order[index] = index;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(sortedKeys[a], sortedKeys[b]));
+    long[] keysInOrder = new long[size];
+    for (int rank = 0; rank < size; rank++) {
+      keysInOrder[rank] = sortedKeys[order[rank]];
+    }
+
+    int[][] contacts = new int[size][];
+    IntStream.range(0, size).parallel().forEach(index -> {
+      Random rnd = new Random(seed + nodes.get(index).getNodeID());
+      long key = getKey(nodes.get(index).getNodeID());
+      int[] selected = new int[NUM_BUCKETS * BUCKET_SIZE];
+      int count = 0;
+      for (int bucket = NUM_BUCKETS - 1; bucket >= 0; bucket--) {
+        // The range of keys sharing the bits above the bucket bit and differing in it
+        long mask = bucket == 63 ? 0 : -1L << (bucket + 1);
+        long low = ((key & mask) | (~key & (1L << bucket))) ^ Long.MIN_VALUE;
+        long high = low + ((1L << bucket) - 1);
+        int from = countBelow(keysInOrder, low);
+        int to = size - countAbove(keysInOrder, high);
+        int available = to - from;
+        if (available <= BUCKET_SIZE) {
+          for (int rank = from; rank < to; rank++) {
+            selected[count++] = order[rank];
+          }
+        } else {
+          HashSet<Integer> sampled = new HashSet<>();
+          while (sampled.size() < BUCKET_SIZE) {
+            int rank = from + rnd.nextInt(available);
+            if (sampled.add(rank)) {
+              selected[count++] = order[rank];
+            }
+          }
+        }
+      }
+      contacts[index] = Arrays.copyOf(selected, count);
+    });
+
+    for (int index = 0; index < size; index++) {
+      Node node = nodes.get(index);
+      KademliaTable table = (KademliaTable) node.getRoutingTable();
+      for (int contact : contacts[index]) {
+        table.addContact(nodes.get(contact).getNodeID());
+      }
+      table.scheduleRefresh();
+    }
+  }
+
+  /**
+   * Counts the sorted keys smaller than the provided key.
+   *
+   * @param sortedKeys the sorted keys
+   * @param key        the key
+   * @return the number of smaller keys
+   */
+  private static int countBelow(long[] sortedKeys, long key) {
+    int low = 0;
+    int high = sortedKeys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sortedKeys[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Counts the sorted keys larger than the provided key.
+   *
+   * @param sortedKeys the sorted keys
+   * @param key        the key
+   * @return the number of larger keys
+   */
+  private static int countAbove(long[] sortedKeys, long key) {
+    int low = 0;
+    int high = sortedKeys.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sortedKeys[middle] <= key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return sortedKeys.length - low;
+  }
+
+  /**
+   * Adds the provided node to its bucket, see {@link #addContact(int)}.
+   *
+   * @param node the node
+   * @return the success state of the operation
+   */
+  public boolean addNeighbor(Node node) {
+    return this.addContact(node.getNodeID());
+  }
+
+  /**
+   * Removes the provided node from its bucket.
+   *
+   * @param node the node
+   * @return the success state of the operation
+   */
+  public boolean removeNeighbor(Node node) {
+    return this.removeContact(node.getNodeID());
+  }
+
+  /**
+   * Adds a node that contacted the self node to its bucket.
+   *
+   * @param from the node
+   * @return the success state of the operation
+   */
+  @Override
+  public boolean addInbound(Node from) {
+    return this.addContact(from.getNodeID());
+  }
+
+  /**
+   * Adds a contact to its bucket. A full bucket keeps its contacts, unless its least recently
+   * added contact has left the network or crashed, in which case that contact is replaced.
+   *
+   * @param nodeID the contact node id
+   * @return true if the contact was added
+   */
+  private boolean addContact(int nodeID) {
+    int selfID = getSelfNode().getNodeID();
+    int bucket = this.getBucket(getKey(nodeID));
+    if (bucket < 0 || indexOf(selfID, nodeID) >= 0 || !ChurnEngine.isOnline(getNode(nodeID))) {
+      return false;
+    }
+    if (this.bucketSizes[bucket] >= BUCKET_SIZE) {
+      int oldest = this.getOldestContact(bucket);
+      if (isAlive(oldest)) {
+        return false;
+      }
+      this.removeContact(oldest);
+    }
+    addEdge(selfID, nodeID, FLAG_OUTBOUND);
+    this.bucketSizes[bucket]++;
+    printAddLink(nodeID);
+    return true;
+  }
+
+  /**
+   * Removes a contact from its bucket.
+   *
+   * @param nodeID the contact node id
+   * @return true if the contact was in the bucket
+   */
+  private boolean removeContact(int nodeID) {
+    if (!removeEdge(getSelfNode().getNodeID(), nodeID)) {
+      return false;
+    }
+    this.bucketSizes[this.getBucket(getKey(nodeID))]--;
+    printRemoveLink(nodeID);
+    return true;
+  }
+
+  /**
+   * Gets the least recently added contact of a bucket.
+   *
+   * @param bucket the bucket index
+   * @return the contact node id
+   */
+  private int getOldestContact(int bucket) {
+    int selfID = getSelfNode().getNodeID();
+    int[] targets = getTargets();
+    int offset = getOffset(selfID);
+    for (int i = offset; i < offset + getDegree(selfID); i++) {
+      if (this.getBucket(getKey(targets[i])) == bucket) {
+        return targets[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks if a contact is still part of the network and answers queries.
+   *
+   * @param nodeID the contact node id
+   * @return true if the contact is alive
+   */
+  private static boolean isAlive(int nodeID) {
+    Node node = getNode(nodeID);
+    return node != null && !(FaultInjector.isActive() && FaultInjector.isCrashed(node))
+        && ChurnEngine.isOnline(node);
+  }
+
+  /**
+   * Gets the contacts closest to a key, at most {@link #BUCKET_SIZE}.
+   *
+   * @param key the key
+   * @return the contact node ids, closest first
+   */
+  public int[] getClosest(long key) {
+    int selfID = getSelfNode().getNodeID();
+    int[] targets = getTargets();
+    int offset = getOffset(selfID);
+    int[] closest = new int[BUCKET_SIZE];
+    int count = 0;
+    for (int i = offset; i < offset + getDegree(selfID); i++) {
+      count = insertClosest(closest, count, targets[i], key);
+    }
+    return Arrays.copyOf(closest, count);
+  }
+
+  /**
+   * Inserts a node id into a list of ids sorted by the XOR distance of their keys to a key,
+   * dropping the farthest id of a full list.
+   *
+   * @param closest the sorted ids
+   * @param count   the number of ids in the list
+   * @param nodeID  the id to insert
+   * @param key     the key
+   * @return the new number of ids in the list
+   */
+  private static int insertClosest(int[] closest, int count, int nodeID, long key) {
+    long distance = getKey(nodeID) ^ key;
+    int position = count;
+    while (position > 0
+        && Long.compareUnsigned(getKey(closest[position - 1]) ^ key, distance) > 0) {
+      position--;
+    }
+    if (position >= closest.length) {
+      return count;
+    }
+    int moved = Math.min(count, closest.length - 1) - position;
+    System.arraycopy(closest, position, closest, position + 1, moved);
+    closest[position] = nodeID;
+    return Math.min(count + 1, closest.length);
+  }
+
+  /**
+   * Looks up the contacts closest to a key. Starting from the own closest contacts, the
+   * {@link #LOOKUP_PARALLELISM} closest contacts not queried yet are asked for their closest
+   * contacts until the closest {@link #BUCKET_SIZE} known contacts have all been queried. Every
+   * queried contact learns about the self node and every answering contact is added to the own
+   * buckets, contacts that do not answer are removed.
+   *
+   * @param key the key
+   * @return the closest node ids, closest first
+   */
+  public int[] lookup(long key) {
+    int selfID = getSelfNode().getNodeID();
+    int[] closest = new int[BUCKET_SIZE];
+    int count = 0;
+    for (int contact : this.getClosest(key)) {
+      count = insertClosest(closest, count, contact, key);
+    }
+    HashSet<Integer> queried = new HashSet<>();
+    while (true) {
+      int[] round = new int[LOOKUP_PARALLELISM];
+      int roundSize = 0;
+      for (int i = 0; i < count && roundSize < LOOKUP_PARALLELISM; i++) {
+        if (queried.add(closest[i])) {
+          round[roundSize++] = closest[i];
+        }
+      }
+      if (roundSize == 0) {
+        break;
+      }
+      for (int r = 0; r < roundSize; r++) {
+        int contact = round[r];
+        if (!isAlive(contact)) {
+          this.removeContact(contact);
+          count = removeClosest(closest, count, contact);
+          continue;
+        }
+        KademliaTable table = (KademliaTable) getNode(contact).getRoutingTable();
+        table.addContact(selfID);
+        this.addContact(contact);
+        for (int found : table.getClosest(key)) {
+          if (found != selfID && !contains(closest, count, found)) {
+            count = insertClosest(closest, count, found, key);
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(closest, count);
+  }
+
+  /**
+   * Refreshes the buckets that are not full, from the bucket of the closest contact upwards, by
+   * looking up a random key of each.
+   */
+  public void refreshBuckets() {
+    if (!ChurnEngine.isOnline(getSelfNode())) {
+      return;
+    }
+    int closestBucket = 0;
+    while (closestBucket < NUM_BUCKETS && this.bucketSizes[closestBucket] == 0) {
+      closestBucket++;
+    }
+    long selfKey = getKey(getSelfNode().getNodeID());
+    for (int bucket = closestBucket; bucket < NUM_BUCKETS; bucket++) {
+      if (this.bucketSizes[bucket] < BUCKET_SIZE) {
+        // Keep the bits above the bucket bit, flip it and draw the bits below
+        long below = bucket == 0 ? 0 : random.nextLong() >>> (64 - bucket);
+        long mask = bucket == 63 ? 0 : -1L << (bucket + 1);
+        this.lookup((selfKey & mask) | (~selfKey & (1L << bucket)) | below);
+      }
+    }
+  }
+
+  private static boolean contains(int[] ids, int count, int nodeID) {
+    for (int i = 0; i < count; i++) {
+      if (ids[i] == nodeID) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int removeClosest(int[] ids, int count, int nodeID) {
+    for (int i = 0; i < count; i++) {
+      if (ids[i] == nodeID) {
+        System.arraycopy(ids, i + 1, ids, i, count - i - 1);
+        return count - 1;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node.routing;
+
+import static simblock.settings.SimulationConfiguration.RANDOM_LINK_FRACTION;
+import static simblock.simulator.Network.getMeanLatency;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+
+import java.util.Arrays;
+import java.util.List;
+import simblock.node.Node;
+
+/**
+ * The implementation of the {@link BitcoinCoreTable} biasing the outbound connections towards
+ * low-latency peers. The fraction {@link
+ * simblock.settings.SimulationConfiguration#RANDOM_LINK_FRACTION} of the outbound connections
+ * goes to peers chosen uniformly at random, the remaining ones to the candidates with the lowest
+ * mean latency out of a larger random sample. Inbound connections are accepted as in the
+ * BitcoinCore routing table.
+ */
+@SuppressWarnings("unused")
+public class LatencyAwareTable extends BitcoinCoreTable {
+
+  /**
+   * The number of candidates sampled per outbound connection, out of which the lowest-latency
+   * ones are chosen.
+   */
+  public static final int CANDIDATES_PER_CONNECTION = 8;
+
+  /**
+   * Instantiates a new Latency aware table.
+   *
+   * @param selfNode the self node
+   */
+  public LatencyAwareTable(Node selfNode) {
+    super(selfNode);
+  }
+
+  @Override
+  protected int getCandidateCount() {
+    return CANDIDATES_PER_CONNECTION * this.getNumConnection() + EXTRA_CANDIDATES;
+  }
+
+  /**
+   * Keeps the first random candidates, as many as the random links of the table, in sample
+   * order and orders the remaining candidates by ascending mean latency from the self node.
+   * Candidates of equal latency keep their random sample order.
+   *
+   * @param candidates the indexes of the candidates in the simulated nodes list
+   * @return the ordered candidates
+   */
+  @Override
+  protected int[] orderCandidates(int[] candidates) {
+    List<Node> nodes = getSimulatedNodes();
+    int numRandom = Math.min(candidates.length,
+                             (int) Math.round(RANDOM_LINK_FRACTION * this.getNumConnection()));
+    // Sort the remaining candidates by latency in microseconds, packed with their position to
+    // keep ties stable
+    long[] keys = new long[candidates.length - numRandom];
+    for (int i = 0; i < keys.length; i++) {
+      Node candidate = nodes.get(candidates[numRandom + i]);
+      long latency = Math.round(1000 * getMeanLatency(getSelfNode(), candidate));
+      keys[i] = latency << 32 | i;
+    }
+    Arrays.sort(keys);
+    int[] ordered = Arrays.copyOf(candidates, candidates.length);
+    for (int i = 0; i < keys.length; i++) {
+      ordered[numRandom + i] = candidates[numRandom + (int) keys[i]];
+    }
+    return ordered;
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.node.routing;
+
+import static simblock.settings.SimulationConfiguration.PARTICIPATION_LINKS;
+import static simblock.settings.SimulationConfiguration.RELAY_LINKS;
+import static simblock.settings.SimulationConfiguration.RELAY_NODE_RATE;
+import static simblock.simulator.Main.random;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+
+import java.util.List;
+import java.util.Random;
+import simblock.node.Node;
+
+/**
+ * The implementation of the {@link BitcoinCoreTable} of a two-tier network, as run by Algorand:
+ * a small set of relay nodes linked to each other and participation nodes linked only to relays.
+ * Relays forward the messages they receive, participation nodes only send their own messages.
+ *
+ * <p>The relays are the nodes with the lowest ids, {@link
+ * simblock.settings.SimulationConfiguration#RELAY_NODE_RATE} of all nodes. Every outbound link,
+ * of a relay or of a participation node, goes to a relay.
+ */
+@SuppressWarnings("unused")
+public class TwoTierTable extends BitcoinCoreTable {
+
+  /**
+   * Instantiates a new Two tier table.
+   *
+   * @param selfNode the self node
+   */
+  public TwoTierTable(Node selfNode) {
+    super(selfNode);
+  }
+
+  /**
+   * Gets the number of relays of the network.
+   *
+   * @return the number of relays
+   */
+  public static int getRelayCount() {
+    return Math.max(1, (int) Math.round(getSimulatedNodes().size() * RELAY_NODE_RATE));
+  }
+
+  /**
+   * Checks if a node is a relay.
+   *
+   * @param nodeID the node id
+   * @return true if the node is a relay
+   */
+  public static boolean isRelay(int nodeID) {
+    return nodeID <= getRelayCount();
+  }
+
+  /**
+   * Checks if the self node is a relay.
+   *
+   * @return true if the self node is a relay
+   */
+  public boolean isRelay() {
+    return isRelay(getSelfNode().getNodeID());
+  }
+
+  /**
+   * Opens outbound links to random relays.
+   */
+  @Override
+  public void initTable() {
+    this.fillOutbound(sampleCandidates(random, getRelayCount(), this.getCandidateCount(), -1),
+                      random);
+  }
+
+  /**
+   * Initializes the two-tier routing tables of all provided nodes. Relays open {@link
+   * simblock.settings.SimulationConfiguration#RELAY_LINKS} links to other relays, participation
+   * nodes {@link simblock.settings.SimulationConfiguration#PARTICIPATION_LINKS} links to relays.
+   *
+   * @param nodes the nodes in node id order, all using a two-tier routing table
+   * @param seed  the seed of the random source
+   */
+  public static void initTables(List<Node> nodes, long seed) {
+    Random rnd = new Random(seed);
+    int relays = getRelayCount();
+    for (int index = 0; index < nodes.size(); index++) {
+      Node node = nodes.get(index);
+      TwoTierTable table = (TwoTierTable) node.getRoutingTable();
+      boolean relay = table.isRelay();
+      node.setNumConnection(relay ? RELAY_LINKS : PARTICIPATION_LINKS);
+      table.fillOutbound(sampleCandidates(rnd, relays, table.getCandidateCount(),
+                                          relay ? index : -1), rnd);
+    }
+  }
+
+  /**
+   * Adds the provided node as an outbound connection, if it is a relay, see {@link
+   * BitcoinCoreTable#addNeighbor(Node)}.
+   *
+   * @param node the node to be connected to the self node.
+   * @return the success state
+   */
+  @Override
+  public boolean addNeighbor(Node node) {
+    return isRelay(node.getNodeID()) && super.addNeighbor(node);
+  }
+}
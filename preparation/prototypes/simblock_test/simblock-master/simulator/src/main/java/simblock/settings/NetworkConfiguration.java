@@ -62,6 +62,37 @@ public class NetworkConfiguration {
    */
   public static final long[][] LATENCY = LATENCY_2019;
 
+  /**
+   * The latency model used between two nodes. "REGION" draws every latency from the
+   * {@link #LATENCY} matrix of the two regions, "COORDINATE" assigns each node synthetic network
+   * coordinates fitted to that matrix and computes pairwise latencies on the fly.
+   */
+  public static final String LATENCY_MODEL = "REGION";
+
+  /**
+   * The transfer model of block and proposal messages. "BANDWIDTH" divides the message size by
+   * the bandwidth of the link, "TCP" additionally accounts for the round trips spent in slow start
+   * and for a receive window smaller than the bandwidth-delay product.
+   */
+  public static final String TRANSFER_MODEL = "BANDWIDTH";
+
+  /**
+   * TCP maximum segment size. (unit: byte)
+   */
+  public static final long TCP_MSS = 1460;
+
+  /**
+   * TCP initial congestion window, RFC 6928. Transfers start from this window because Linux
+   * restarts slow start on connections that were idle for longer than a retransmission timeout,
+   * which is the usual state of a peer connection between two blocks. (unit: segment)
+   */
+  public static final long TCP_INITIAL_WINDOW = 10;
+
+  /**
+   * TCP maximum window, bounded by the receive buffer of the peer. (unit: byte)
+   */
+  public static final long TCP_MAX_WINDOW = 1024 * 1024;
+
   /**
    * List of download bandwidth assigned to each region, and last element is Inter-regional
    * bandwidth. (unit: bit per second) for year 2015
@@ -176,4 +207,29 @@ public class NetworkConfiguration {
    * "Discovering bitcoin's public topology and influential nodes", 2015.
    */
   public static final double[] DEGREE_DISTRIBUTION = DEGREE_DISTRIBUTION_BITCOIN_2015;
+
+  /**
+   * The generator of the links of BitcoinCore routing tables: "RANDOM" for outbound links to
+   * random peers following {@link #DEGREE_DISTRIBUTION}, "BARABASI_ALBERT" for a scale-free
+   * network grown by preferential attachment or "WATTS_STROGATZ" for a small-world network, a
+   * rewired ring lattice. See {@link simblock.simulator.TopologyGenerator}.
+   */
+  public static final String TOPOLOGY_GENERATOR = "RANDOM";
+
+  /**
+   * The number of outbound links every new node opens in a Barabasi-Albert network.
+   */
+  public static final int BA_LINKS_PER_NODE = 4;
+
+  /**
+   * The number of ring lattice neighbors of every node in a Watts-Strogatz network, half of them
+   * on each side. Must be even.
+   */
+  public static final int WS_RING_NEIGHBORS = 8;
+
+  /**
+   * The probability that a ring lattice link of a Watts-Strogatz network is rewired to a random
+   * node.
+   */
+  public static final double WS_REWIRING_PROBABILITY = 0.1;
 }
\ No newline at end of file
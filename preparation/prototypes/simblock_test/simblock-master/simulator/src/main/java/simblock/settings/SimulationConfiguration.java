@@ -30,10 +30,37 @@ public class SimulationConfiguration {
   public static final int NUM_OF_NODES = 50;//300;//600;//800;//6000;
 
   /**
-   * The kind of routing table.
+   * The kind of routing table, "simblock.node.routing.BitcoinCoreTable" for random links,
+   * "simblock.node.routing.LatencyAwareTable" for links biased towards low-latency peers or
+   * "simblock.node.routing.KademliaTable" for XOR-distance k-buckets,
+   * "simblock.node.routing.TwoTierTable" for relay and participation nodes or
+   * "simblock.node.routing.EdgeListTable" for the nodes and links of {@link #EDGE_LIST_FILE}.
    */
   public static final String TABLE = "simblock.node.routing.BitcoinCoreTable";
 
+  /**
+   * The fraction of the outbound connections of a latency-aware routing table that go to peers
+   * chosen uniformly at random, regardless of their latency. These long links keep the diameter
+   * of the network small, the other connections go to the lowest-latency candidates.
+   */
+  public static final double RANDOM_LINK_FRACTION = 0.25;
+
+  /**
+   * The rate of relay nodes of a two-tier routing table. Relays link to each other and forward
+   * messages, participation nodes only link to relays and never forward messages.
+   */
+  public static final double RELAY_NODE_RATE = 0.05;
+
+  /**
+   * The number of outbound links a relay opens to other relays in a two-tier routing table.
+   */
+  public static final int RELAY_LINKS = 8;
+
+  /**
+   * The number of relays a participation node connects to in a two-tier routing table.
+   */
+  public static final int PARTICIPATION_LINKS = 4;
+
   /**
    * The consensus algorithm to be used.
    */
@@ -79,11 +106,132 @@ public class SimulationConfiguration {
   //public static final int END_BLOCK_HEIGHT = 100;
   public static final int END_BLOCK_HEIGHT = 10;
 
+  /**
+   * Whether the history below the last final block is pruned, see {@link
+   * simblock.simulator.BlockPruner}. A proof-of-work block is final once it is buried {@link
+   * #PRUNING_DEPTH} blocks below the heaviest chain head, an Algorand block once it is certified.
+   */
+  public static final boolean BLOCK_PRUNING = false;
+
+  /**
+   * The depth below the chain head at which a proof-of-work block is considered final.
+   */
+  public static final int PRUNING_DEPTH = 6;
+
+  /**
+   * The number of heights the final block advances between two prunings.
+   */
+  public static final int PRUNING_INTERVAL = 100;
+
+  /**
+   * Whether the propagation times of the observed blocks are kept off heap, see {@link
+   * simblock.simulator.BlockPropagation}.
+   */
+  public static final boolean PROPAGATION_OFF_HEAP = false;
+
+  /**
+   * Whether the generated nodes and links are cached in a topology snapshot. Later runs with the
+   * same network configuration load the snapshot instead of generating the network again, see
+   * {@link simblock.simulator.TopologySnapshot}. The snapshots are written to a cache directory
+   * next to the configuration directory.
+   */
+  public static final boolean TOPOLOGY_SNAPSHOT = false;
+
+  /**
+   * Whether a topology report, with the hop diameter, the shortest-path latencies from every
+   * region and the clustering coefficient, is written next to every graph file, see {@link
+   * simblock.simulator.statistics.TopologyAnalyzer}. The graph of the initial network is written
+   * when this is enabled.
+   */
+  public static final boolean TOPOLOGY_REPORT = false;
+
+  /**
+   * The fault schedule, resolved next to the simulator configuration file. A missing or empty
+   * schedule injects no faults, see {@link simblock.simulator.FaultInjector#loadSchedule}.
+   */
+  public static final String FAULT_SCHEDULE_FILE = "faults.txt";
+
+  /**
+   * The edge list of the network of the edge list routing table, resolved next to the simulator
+   * configuration file. Its nodes replace the {@link #NUM_OF_NODES} generated nodes, see {@link
+   * simblock.node.routing.EdgeListTable#loadNetwork}.
+   */
+  public static final String EDGE_LIST_FILE = "topology.txt";
+
+  /**
+   * Whether churn nodes leave and rejoin the network during the run, see {@link
+   * simblock.simulator.ChurnEngine}. Session and offline lengths follow Weibull distributions
+   * with the means and the shape below, a shape of 1 gives exponential lengths and smaller
+   * shapes the heavy tails measured in deployed peer-to-peer networks.
+   */
+  public static final boolean CHURN_SESSIONS = false;
+
+  /**
+   * The mean time a churn node stays online. (unit: millisecond)
+   */
+  public static final long MEAN_SESSION_LENGTH = 2 * 60 * 60 * 1000;
+
+  /**
+   * The mean time a churn node stays offline before it rejoins. (unit: millisecond)
+   */
+  public static final long MEAN_OFFLINE_LENGTH = 30 * 60 * 1000;
+
+  /**
+   * The shape of the Weibull distributions of session and offline lengths.
+   */
+  public static final double SESSION_LENGTH_SHAPE = 0.5;
+
+  /**
+   * The number of blocks a node uploads concurrently. Concurrent uploads split the upload
+   * bandwidth of the node evenly, further block requests wait in its upload queue.
+   */
+  public static final int UPLOAD_SLOTS = 1;
+
+  /**
+   * The time after which a node gives up a block request its peer did not answer, and requests
+   * the block from another peer that announced it. Only used when nodes can crash or leave.
+   * (unit: millisecond)
+   */
+  public static final long DOWNLOAD_TIMEOUT = 60 * 1000;
+
   /**
    * Block size. (unit: byte).
    */
   public static final long BLOCK_SIZE = 535000;//6110;//8000;//535000;//0.5MB
 
+  /**
+   * Inv message size, a message header and a single inventory vector. (unit: byte)
+   */
+  public static final long INV_MESSAGE_SIZE = 24 + 1 + 36;
+
+  /**
+   * Getdata message size, a message header and a single inventory vector. (unit: byte)
+   */
+  public static final long GETDATA_MESSAGE_SIZE = 24 + 1 + 36;
+
+  /**
+   * Getblocktxn message size, a message header, the block hash and the differentially encoded
+   * indexes of the missing transactions. (unit: byte)
+   */
+  public static final long GETBLOCKTXN_MESSAGE_SIZE = 24 + 32 + 64;
+
+  /**
+   * Algorand vote size (soft, cert and next votes), the vote itself plus the sortition
+   * credential of the voter. (unit: byte)
+   */
+  public static final long VOTE_MESSAGE_SIZE = 250;
+
+  /**
+   * Algorand proposal header size, the block header plus the sortition credential of the
+   * proposer. The proposal payload is {@link #BLOCK_SIZE}. (unit: byte)
+   */
+  public static final long PROPOSAL_HEADER_SIZE = 300;
+
+  /**
+   * Time spent serializing and deserializing each byte of a message. (unit: nanosecond)
+   */
+  public static final long SERIALIZATION_COST_PER_BYTE = 10;
+
   /**
    * The usage rate of compact block relay (CBR) protocol.
    */
@@ -96,6 +244,37 @@ public class SimulationConfiguration {
    * Compact block size. (unit: byte)
    */
 	public static final long COMPACT_BLOCK_SIZE = 18 * 1000; // 18KB
+  /**
+   * The maximum number of high-bandwidth compact block relay peers a node selects, the peers that
+   * most recently delivered a new block first. They push compact blocks to the node unsolicited,
+   * the other peers announce blocks with an inv. 0, the default, disables high-bandwidth mode.
+   */
+  public static final int HIGH_BANDWIDTH_PEERS = 0;
+  /**
+   * Whether a node forwards a block it downloads with the legacy protocol once the first {@link
+   * #CUT_THROUGH_PREFIX_SIZE} bytes arrived, instead of after the whole block. The rest of the
+   * block streams through the node, whose uploads of the block end no earlier than its download.
+   */
+  public static final boolean CUT_THROUGH_RELAY = false;
+  /**
+   * The prefix of a block a node validates before forwarding it in cut-through relay, by default
+   * the block header. (unit: byte)
+   */
+  public static final long CUT_THROUGH_PREFIX_SIZE = 80;
+  /**
+   * Whether a node downloads a block it does not get as compact block in chunks, requested in
+   * parallel from every peer that announced the block. Otherwise the whole block is requested
+   * from the first peer that announced it.
+   */
+  public static final boolean MULTI_SOURCE_DOWNLOAD = false;
+  /**
+   * Chunk size of a multi-source download. (unit: byte)
+   */
+  public static final long DOWNLOAD_CHUNK_SIZE = 64 * 1000;
+  /**
+   * The number of chunks of a multi-source download a node requests from a peer at a time.
+   */
+  public static final int CHUNK_REQUESTS_PER_PEER = 2;
 	/**
    * CBR failure rate for a node that always connect network.
    */
@@ -192,4 +371,33 @@ public class SimulationConfiguration {
     0.72f,0.73f,0.74f,0.75f,0.76f,0.77f,0.78f,0.79f,0.8f,0.81f,0.82f,0.83f,0.84f,0.85f,0.86f,
     0.87f,0.88f,0.89f,0.9f,0.91f,0.92f,0.93f,0.94f,0.95f,0.96f
   };
+
+  /**
+   * Whether compact blocks are reconstructed from the mempools of the nodes, see {@link
+   * simblock.node.Mempool}. Otherwise a compact block fails with the CBR failure rate of the
+   * receiving node and the missing size is drawn from its CBR failure block size distribution.
+   */
+  public static final boolean MEMPOOL_RECONSTRUCTION = false;
+
+  /**
+   * The rate at which transactions are broadcast. (unit: transactions per second)
+   */
+  public static final long TRANSACTION_RATE = 7;
+
+  /**
+   * Transaction size, a block holds at most {@link #BLOCK_SIZE} / TRANSACTION_SIZE transactions.
+   * (unit: byte)
+   */
+  public static final long TRANSACTION_SIZE = 250;
+
+  /**
+   * The probability that a node that always connects to the network misses a transaction.
+   */
+  public static final double MEMPOOL_MISS_RATE_FOR_CONTROL_NODE = 0.00007;
+
+  /**
+   * The probability that a node that causes churn misses a transaction, besides the transactions
+   * broadcast while it is offline.
+   */
+  public static final double MEMPOOL_MISS_RATE_FOR_CHURN_NODE = 0.00016;
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.SimulationConfiguration.PROPAGATION_OFF_HEAP;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * The type Block propagation records which nodes have seen a block, as a bitset indexed by node
+ * id, and when they saw it. The propagation times are kept, in the order in which the nodes first
+ * saw the block, from the moment the block is observed until they are released, the bitset is kept
+ * for the lifetime of the block.
+ */
+public class BlockPropagation {
+
+  /**
+   * The nodes that have seen the block, one bit per node id.
+   */
+  private final long[] seen;
+
+  /**
+   * The number of node ids.
+   */
+  private final int numNodeIDs;
+
+  /**
+   * The node ids in order of first arrival since the block is observed.
+   */
+  private int[] order;
+
+  /**
+   * The number of nodes whose propagation time is recorded.
+   */
+  private int arrivals = 0;
+
+  /**
+   * The propagation time of every node, indexed by node id, -1 for the nodes that have not seen
+   * the block since it is observed. On heap or off heap, see {@link
+   * simblock.settings.SimulationConfiguration#PROPAGATION_OFF_HEAP}.
+   */
+  private LongBuffer times;
+
+  /**
+   * Instantiates a new Block propagation of an observed block.
+   *
+   * @param numNodeIDs the number of node ids, one more than the highest node id
+   */
+  public BlockPropagation(int numNodeIDs) {
+    this.numNodeIDs = numNodeIDs;
+    this.seen = new long[(numNodeIDs + 63) >>> 6];
+    this.observe();
+  }
+
+  /**
+   * Starts recording propagation times, again if they were released.
+   */
+  public void observe() {
+    this.order = new int[16];
+    this.arrivals = 0;
+    this.times = PROPAGATION_OFF_HEAP
+        ? ByteBuffer.allocateDirect(8 * this.numNodeIDs).order(ByteOrder.nativeOrder())
+            .asLongBuffer()
+        : LongBuffer.allocate(this.numNodeIDs);
+    for (int i = 0; i < this.numNodeIDs; i++) {
+      this.times.put(i, -1);
+    }
+  }
+
+  /**
+   * Checks if the propagation times are recorded.
+   *
+   * @return true if the block is observed
+   */
+  public boolean isObserved() {
+    return this.times != null;
+  }
+
+  /**
+   * Records that a node has seen the block. A node seeing the block again keeps its position in
+   * the arrival order and gets the new propagation time.
+   *
+   * @param nodeID the node id
+   * @param time   the propagation time, from the minting of the block to its arrival
+   */
+  public void add(int nodeID, long time) {
+    this.seen[nodeID >>> 6] |= 1L << nodeID;
+    if (this.times == null) {
+      return;
+    }
+    if (this.times.get(nodeID) < 0) {
+      if (this.arrivals == this.order.length) {
+        this.order = Arrays.copyOf(this.order, 2 * this.arrivals);
+      }
+      this.order[this.arrivals] = nodeID;
+      this.arrivals++;
+    }
+    this.times.put(nodeID, time);
+  }
+
+  /**
+   * Checks if a node has seen the block.
+   *
+   * @param nodeID the node id
+   * @return true if the node has seen the block
+   */
+  public boolean hasSeen(int nodeID) {
+    return (this.seen[nodeID >>> 6] & (1L << nodeID)) != 0;
+  }
+
+  /**
+   * Gets the number of nodes whose propagation time is recorded.
+   *
+   * @return the number of nodes, 0 once the propagation times are released
+   */
+  public int getArrivals() {
+    return this.arrivals;
+  }
+
+  /**
+   * Gets the node id of an arrival.
+   *
+   * @param index the index of the arrival
+   * @return the node id
+   */
+  public int getNodeID(int index) {
+    return this.order[index];
+  }
+
+  /**
+   * Gets the propagation time of a node.
+   *
+   * @param nodeID the node id
+   * @return the time from the minting of the block to its arrival
+   */
+  public long getTime(int nodeID) {
+    return this.times.get(nodeID);
+  }
+
+  /**
+   * Releases the propagation times, keeping the bitset.
+   */
+  public void releaseTimes() {
+    this.order = null;
+    this.arrivals = 0;
+    this.times = null;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.SimulationConfiguration.BLOCK_PRUNING;
+import static simblock.settings.SimulationConfiguration.PRUNING_DEPTH;
+import static simblock.settings.SimulationConfiguration.PRUNING_INTERVAL;
+import static simblock.simulator.Main.OUT_JSON_FILE;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+import static simblock.simulator.Timer.getCurrentTime;
+
+import simblock.block.Block;
+import simblock.block.BlockStore;
+import simblock.block.ProofOfWorkBlock;
+import simblock.block.SamplePoSBlock;
+import simblock.node.Node;
+
+/**
+ * The type Block pruner bounds the memory of long runs by pruning the block history below the
+ * last final block, the checkpoint. A proof-of-work block is final once it is buried deep enough
+ * below the heaviest chain head any node has, an Algorand block once it is certified. Pruned
+ * blocks off the final chain are dropped from the {@link BlockStore}, pruned blocks are dropped
+ * from the propagation records of the {@link Simulator} and from the orphans of every node, so
+ * that the blocks no node holds any more are released. The blocks of the final chain and the
+ * columns of all blocks remain, which chain walks still read.
+ *
+ * <p>Every pruning prints the propagation times still kept for the pruned blocks and a
+ * checkpoint summary, with the number of pruned blocks and archived orphans, to the statistics
+ * stream.
+ */
+public class BlockPruner {
+
+  /**
+   * The checkpoint, the highest final block so far.
+   */
+  private static Block checkpoint = null;
+
+  /**
+   * The heaviest chain head so far.
+   */
+  private static Block heaviestHead = null;
+
+  /**
+   * The height up to which the history was pruned.
+   */
+  private static int prunedHeight = 0;
+
+  /**
+   * The number of pruned blocks and archived orphans so far.
+   */
+  private static long prunedBlocks = 0;
+  private static long archivedOrphans = 0;
+
+  /**
+   * Handles a new chain head of a node. If it is the heaviest head so far, its ancestor {@link
+   * simblock.settings.SimulationConfiguration#PRUNING_DEPTH} blocks deep becomes final. The heads
+   * of nodes that lag behind or mine on a minority fork do not finalize anything.
+   *
+   * @param head the new head
+   */
+  public static void addHead(Block head) {
+    if (!BLOCK_PRUNING || heaviestHead != null && !isHeavier(head, heaviestHead)) {
+      return;
+    }
+    heaviestHead = head;
+    if (head.getHeight() - PRUNING_DEPTH >= prunedHeight + PRUNING_INTERVAL) {
+      addFinalBlock(head.getBlockWithHeight(head.getHeight() - PRUNING_DEPTH));
+    }
+  }
+
+  /**
+   * Checks if a chain head carries more work than another, by total difficulty for
+   * proof-of-work and proof-of-stake blocks and by height otherwise.
+   *
+   * @param head  the head
+   * @param other the other head
+   * @return true if the head is heavier
+   */
+  private static boolean isHeavier(Block head, Block other) {
+    if (head instanceof ProofOfWorkBlock && other instanceof ProofOfWorkBlock) {
+      return BlockStore.getTotalDifficulty(head.getId())
+          > BlockStore.getTotalDifficulty(other.getId());
+    }
+    if (head instanceof SamplePoSBlock && other instanceof SamplePoSBlock) {
+      return ((SamplePoSBlock) head).getTotalDifficulty()
+          > ((SamplePoSBlock) other).getTotalDifficulty();
+    }
+    return head.getHeight() > other.getHeight();
+  }
+
+  /**
+   * Handles a final block, for instance a block certified by Algorand, and prunes the history
+   * below it once it is {@link simblock.settings.SimulationConfiguration#PRUNING_INTERVAL}
+   * heights above the last pruning.
+   *
+   * @param block the final block
+   */
+  public static void addFinalBlock(Block block) {
+    if (!BLOCK_PRUNING || block == null
+        || checkpoint != null && block.getHeight() <= checkpoint.getHeight()) {
+      return;
+    }
+    checkpoint = block;
+    if (block.getHeight() >= prunedHeight + PRUNING_INTERVAL) {
+      prune();
+    }
+  }
+
+  /**
+   * Prunes the blocks and orphans below the checkpoint and prints the checkpoint summary.
+   */
+  private static void prune() {
+    int height = checkpoint.getHeight();
+    int blocks = BlockStore.prune(checkpoint.getId(), Simulator::releaseBlock);
+    int orphans = 0;
+    for (Node node : getSimulatedNodes()) {
+      orphans += node.archiveOrphans(height);
+    }
+    prunedHeight = height;
+    prunedBlocks += blocks;
+    archivedOrphans += orphans;
+
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"checkpoint\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
+    OUT_JSON_FILE.print("\"block-id\":" + checkpoint.getId() + ",");
+    OUT_JSON_FILE.print("\"block-height\":" + height + ",");
+    if (checkpoint instanceof ProofOfWorkBlock) {
+      OUT_JSON_FILE.print("\"total-difficulty\":"
+          + ((ProofOfWorkBlock) checkpoint).getTotalDifficulty() + ",");
+    }
+    OUT_JSON_FILE.print("\"pruned-blocks\":" + blocks + ",");
+    OUT_JSON_FILE.print("\"archived-orphans\":" + orphans + ",");
+    OUT_JSON_FILE.print("\"total-pruned-blocks\":" + prunedBlocks + ",");
+    OUT_JSON_FILE.print("\"total-archived-orphans\":" + archivedOrphans);
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
+}
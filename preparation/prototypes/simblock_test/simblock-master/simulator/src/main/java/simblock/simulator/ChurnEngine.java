@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.SimulationConfiguration.CHURN_SESSIONS;
+import static simblock.settings.SimulationConfiguration.MEAN_OFFLINE_LENGTH;
+import static simblock.settings.SimulationConfiguration.MEAN_SESSION_LENGTH;
+import static simblock.settings.SimulationConfiguration.SESSION_LENGTH_SHAPE;
+import static simblock.simulator.Main.OUT_JSON_FILE;
+import static simblock.simulator.Main.random;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+import static simblock.simulator.Timer.putTask;
+
+import java.util.Arrays;
+import org.apache.commons.math3.special.Gamma;
+import simblock.node.Node;
+import simblock.task.AbstractMessageTask;
+import simblock.task.ChurnTask;
+
+/**
+ * The type Churn engine makes the churn nodes leave and rejoin the network. Every churn node
+ * alternates between online sessions and offline periods whose lengths are drawn from Weibull
+ * distributions, each change is a {@link ChurnTask} in the {@link Timer}.
+ *
+ * <p>A leaving node drops its links and the routing tables of its neighbors repair themselves
+ * locally, see {@link simblock.node.routing.AbstractRoutingTable#leaveTable()}. Messages in
+ * flight to a departed node are not searched in the timer queue: every message records the
+ * session of its receiver when it is created and is cancelled when it arrives in another
+ * session or while the receiver is offline.
+ */
+public class ChurnEngine {
+
+  /**
+   * The session counter of every node, indexed by node id. Odd values are offline periods.
+   */
+  private static int[] sessions = new int[0];
+
+  /**
+   * The Weibull scales giving the configured mean session and offline lengths.
+   */
+  private static final double SESSION_SCALE =
+      MEAN_SESSION_LENGTH / Gamma.gamma(1 + 1 / SESSION_LENGTH_SHAPE);
+  private static final double OFFLINE_SCALE =
+      MEAN_OFFLINE_LENGTH / Gamma.gamma(1 + 1 / SESSION_LENGTH_SHAPE);
+
+  /**
+   * The number of departures and rejoins so far.
+   */
+  private static long departures = 0;
+  private static long rejoins = 0;
+
+  /**
+   * The number of messages cancelled because their receiver left.
+   */
+  private static long cancelledMessages = 0;
+
+  /**
+   * Whether nodes churn in this run, see {@link
+   * simblock.settings.SimulationConfiguration#CHURN_SESSIONS}.
+   *
+   * @return true if churn is enabled
+   */
+  public static boolean isEnabled() {
+    return CHURN_SESSIONS;
+  }
+
+  /**
+   * Gets the current session of a node.
+   *
+   * @param node the node
+   * @return the session counter, odd while the node is offline
+   */
+  public static int getSession(Node node) {
+    int id = node.getNodeID();
+    return id < sessions.length ? sessions[id] : 0;
+  }
+
+  /**
+   * Checks if a node is part of the network.
+   *
+   * @param node the node
+   * @return true if the node is online
+   */
+  public static boolean isOnline(Node node) {
+    return !CHURN_SESSIONS || (getSession(node) & 1) == 0;
+  }
+
+  /**
+   * Checks if a message is cancelled, because its receiver left the network after the message
+   * was created. Messages a node sends to itself, such as step timers, are never cancelled.
+   *
+   * @param message         the message
+   * @param receiverSession the session of the receiver when the message was created
+   * @return true if the message is cancelled
+   */
+  public static boolean isCancelled(AbstractMessageTask message, int receiverSession) {
+    if (message.getFrom() == message.getTo()) {
+      return false;
+    }
+    int session = getSession(message.getTo());
+    if (session != receiverSession || (session & 1) != 0) {
+      cancelledMessages++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Schedules the first departure of every churn node.
+   */
+  public static void start() {
+    if (!CHURN_SESSIONS) {
+      return;
+    }
+    for (Node node : getSimulatedNodes()) {
+      if (node.isChurnNode()) {
+        putTask(new ChurnTask(node, false, drawLength(SESSION_SCALE)));
+      }
+    }
+  }
+
+  /**
+   * Makes a node leave the network: it stops its activity, drops its links and schedules its
+   * rejoin.
+   *
+   * @param node the node
+   */
+  public static void leave(Node node) {
+    int id = node.getNodeID();
+    if (id >= sessions.length) {
+      sessions = Arrays.copyOf(sessions, Math.max(id + 1, 2 * sessions.length));
+    }
+    sessions[id]++;
+    node.crash();
+    node.getRoutingTable().leaveTable();
+    departures++;
+    putTask(new ChurnTask(node, true, drawLength(OFFLINE_SCALE)));
+  }
+
+  /**
+   * Makes a node rejoin the network: it opens new links, resumes its activity and schedules its
+   * next departure.
+   *
+   * @param node the node
+   */
+  public static void rejoin(Node node) {
+    sessions[node.getNodeID()]++;
+    node.getRoutingTable().rejoinTable();
+    // A node crashed by a fault resumes when the fault ends
+    if (!(FaultInjector.isActive() && FaultInjector.isCrashed(node))) {
+      node.restart();
+    }
+    rejoins++;
+    putTask(new ChurnTask(node, false, drawLength(SESSION_SCALE)));
+  }
+
+  /**
+   * Draws a session or offline length from a Weibull distribution by inverse transform.
+   *
+   * @param scale the scale of the distribution
+   * @return the length in milliseconds, at least 1
+   */
+  private static long drawLength(double scale) {
+    double exponential = -Math.log(1 - random.nextDouble());
+    double length = scale * Math.pow(exponential, 1 / SESSION_LENGTH_SHAPE);
+    return Math.max(1, Math.round(length));
+  }
+
+  /**
+   * Prints the number of departures, rejoins and cancelled messages, if churn is enabled.
+   */
+  public static void printStatistics() {
+    if (!CHURN_SESSIONS) {
+      return;
+    }
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"churn-statistics\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"departures\":" + departures + ",");
+    OUT_JSON_FILE.print("\"rejoins\":" + rejoins + ",");
+    OUT_JSON_FILE.print("\"cancelled-messages\":" + cancelledMessages);
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
+}
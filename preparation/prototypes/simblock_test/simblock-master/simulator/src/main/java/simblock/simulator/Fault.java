@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+/**
+ * The type Fault describes a single entry of the fault schedule, a fault of a given type that is
+ * active during a window of simulated time. See {@link FaultInjector}.
+ */
+public class Fault {
+
+  /**
+   * The kinds of faults that can be injected.
+   */
+  public enum Type {
+    /**
+     * Drops all messages between two sets of regions.
+     */
+    PARTITION,
+    /**
+     * Crashes a set of nodes, which are restarted at the end of the window.
+     */
+    CRASH,
+    /**
+     * Multiplies the latency of the links between two sets of regions.
+     */
+    DELAY,
+    /**
+     * Drops every message with a probability.
+     */
+    LOSS
+  }
+
+  private final Type type;
+
+  /**
+   * Activation and deactivation time in milliseconds. A negative end keeps the fault active until
+   * the end of the simulation.
+   */
+  private final long start;
+  private final long end;
+
+  /**
+   * Regions on either side of a partition or a delayed link set, or the ids of crashed nodes.
+   */
+  private final int[] first;
+  private final int[] second;
+
+  /**
+   * The latency factor of a delay or the drop probability of a loss.
+   */
+  private final double value;
+
+  /**
+   * Instantiates a new Fault.
+   *
+   * @param type   the fault type
+   * @param start  the activation time in milliseconds
+   * @param end    the deactivation time in milliseconds, negative for never
+   * @param first  the first set of regions, or the crashed node ids
+   * @param second the second set of regions
+   * @param value  the latency factor or the drop probability
+   */
+  public Fault(Type type, long start, long end, int[] first, int[] second, double value) {
+    this.type = type;
+    this.start = start;
+    this.end = end;
+    this.first = first;
+    this.second = second;
+    this.value = value;
+  }
+
+  /**
+   * Gets the fault type.
+   *
+   * @return the type
+   */
+  public Type getType() {
+    return this.type;
+  }
+
+  /**
+   * Gets the activation time.
+   *
+   * @return the activation time in milliseconds
+   */
+  public long getStart() {
+    return this.start;
+  }
+
+  /**
+   * Gets the deactivation time.
+   *
+   * @return the deactivation time in milliseconds, negative if the fault is never deactivated
+   */
+  public long getEnd() {
+    return this.end;
+  }
+
+  /**
+   * Gets the first set of regions, or the crashed node ids.
+   *
+   * @return the first set
+   */
+  public int[] getFirst() {
+    return this.first;
+  }
+
+  /**
+   * Gets the second set of regions.
+   *
+   * @return the second set
+   */
+  public int[] getSecond() {
+    return this.second;
+  }
+
+  /**
+   * Gets the latency factor of a delay or the drop probability of a loss.
+   *
+   * @return the value
+   */
+  public double getValue() {
+    return this.value;
+  }
+}
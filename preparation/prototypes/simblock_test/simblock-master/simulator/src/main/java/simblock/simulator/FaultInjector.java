@@ -0,0 +1,427 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.NetworkConfiguration.REGION_LIST;
+import static simblock.simulator.Main.OUT_JSON_FILE;
+import static simblock.simulator.Main.random;
+import static simblock.simulator.Simulator.getNode;
+import static simblock.simulator.Timer.getCurrentTime;
+import static simblock.simulator.Timer.putTaskAbsoluteTime;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import simblock.node.Node;
+import simblock.task.AbstractMessageTask;
+import simblock.task.FaultTask;
+
+/**
+ * The type Fault injector keeps the state of the currently active faults of the fault schedule:
+ * partitioned regions, crashed nodes, delayed links and message loss. Faults are switched on and
+ * off by {@link FaultTask} instances scheduled in the {@link Timer}.
+ *
+ * <p>The message path only consults the injector after testing {@link #isActive()}, a single
+ * static flag that stays false unless at least one fault is active.
+ */
+public class FaultInjector {
+
+  /**
+   * Whether any fault is currently active.
+   */
+  private static boolean active = false;
+
+  /**
+   * The number of currently active faults.
+   */
+  private static int activeFaults = 0;
+
+  /**
+   * The number of faults that have been scheduled.
+   */
+  private static int scheduledFaults = 0;
+
+  /**
+   * Whether a crash has been scheduled.
+   */
+  private static boolean crashesScheduled = false;
+
+  /**
+   * The number of active partitions between each pair of regions.
+   */
+  private static final int[][] partitions = new int[REGION_LIST.size()][REGION_LIST.size()];
+
+  /**
+   * The latency factor between each pair of regions.
+   */
+  private static final double[][] latencyFactors =
+      new double[REGION_LIST.size()][REGION_LIST.size()];
+
+  static {
+    for (double[] factors : latencyFactors) {
+      Arrays.fill(factors, 1.0);
+    }
+  }
+
+  /**
+   * The number of active crashes of each node, indexed by node id.
+   */
+  private static int[] crashes = new int[0];
+
+  /**
+   * The drop probabilities of the active losses.
+   */
+  private static final ArrayList<Double> losses = new ArrayList<>();
+
+  /**
+   * The combined drop probability of the active losses.
+   */
+  private static double lossProbability = 0;
+
+  /**
+   * The number of messages dropped so far.
+   */
+  private static long droppedMessages = 0;
+
+  /**
+   * Whether any fault is currently active. Callers test this before any other method of the
+   * injector.
+   *
+   * @return true if at least one fault is active
+   */
+  public static boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Checks if the provided node is crashed.
+   *
+   * @param node the node
+   * @return true if the node is crashed
+   */
+  public static boolean isCrashed(Node node) {
+    int id = node.getNodeID();
+    return id < crashes.length && crashes[id] > 0;
+  }
+
+  /**
+   * Checks if the regions of the provided nodes are partitioned.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return true if the messages between both nodes are dropped
+   */
+  public static boolean isPartitioned(Node from, Node to) {
+    return partitions[from.getRegion()][to.getRegion()] > 0;
+  }
+
+  /**
+   * Checks if the provided message is dropped, because either end is crashed, the regions of
+   * both ends are partitioned or it is lost. Messages a node sends to itself, such as step
+   * timers, are never dropped.
+   *
+   * @param message the message
+   * @return true if the message is dropped
+   */
+  public static boolean isDropped(AbstractMessageTask message) {
+    Node from = message.getFrom();
+    Node to = message.getTo();
+    if (from == to) {
+      return false;
+    }
+    if (isCrashed(from) || isCrashed(to) || isPartitioned(from, to)
+        || (lossProbability > 0 && random.nextDouble() < lossProbability)) {
+      droppedMessages++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Applies the latency factor of the link between the provided nodes.
+   *
+   * @param latency the latency in milliseconds
+   * @param from    the sending node
+   * @param to      the receiving node
+   * @return the inflated latency in milliseconds
+   */
+  public static long inflateLatency(long latency, Node from, Node to) {
+    return Math.round(latency * latencyFactors[from.getRegion()][to.getRegion()]);
+  }
+
+  /**
+   * Schedules the activation and deactivation of a fault.
+   *
+   * @param fault the fault
+   */
+  public static void schedule(Fault fault) {
+    putTaskAbsoluteTime(new FaultTask(fault, true), fault.getStart());
+    if (fault.getEnd() >= 0) {
+      putTaskAbsoluteTime(new FaultTask(fault, false), fault.getEnd());
+    }
+    scheduledFaults++;
+    crashesScheduled |= fault.getType() == Fault.Type.CRASH;
+  }
+
+  /**
+   * Checks if a crash has been scheduled, so that a node may stop answering requests.
+   *
+   * @return true if a node may crash
+   */
+  public static boolean hasCrashes() {
+    return crashesScheduled;
+  }
+
+  /**
+   * Activates or deactivates a fault.
+   *
+   * @param fault    the fault
+   * @param activate true to activate the fault, false to deactivate it
+   */
+  public static void setFaultActive(Fault fault, boolean activate) {
+    int delta = activate ? 1 : -1;
+    switch (fault.getType()) {
+      case PARTITION:
+        for (int a : fault.getFirst()) {
+          for (int b : fault.getSecond()) {
+            partitions[a][b] += delta;
+            partitions[b][a] += delta;
+          }
+        }
+        break;
+      case DELAY:
+        double factor = activate ? fault.getValue() : 1.0 / fault.getValue();
+        // Overlapping region sets name a pair twice, the factor applies once per unordered pair
+        boolean[][] pairs = new boolean[latencyFactors.length][latencyFactors.length];
+        for (int a : fault.getFirst()) {
+          for (int b : fault.getSecond()) {
+            pairs[Math.min(a, b)][Math.max(a, b)] = true;
+          }
+        }
+        for (int a = 0; a < pairs.length; a++) {
+          for (int b = a; b < pairs.length; b++) {
+            if (pairs[a][b]) {
+              latencyFactors[a][b] *= factor;
+              if (a != b) {
+                latencyFactors[b][a] *= factor;
+              }
+            }
+          }
+        }
+        break;
+      case LOSS:
+        if (activate) {
+          losses.add(fault.getValue());
+        } else {
+          losses.remove(fault.getValue());
+        }
+        double delivered = 1;
+        for (double loss : losses) {
+          delivered *= 1 - loss;
+        }
+        lossProbability = 1 - delivered;
+        break;
+      case CRASH:
+        for (int id : fault.getFirst()) {
+          if (id >= crashes.length) {
+            crashes = Arrays.copyOf(crashes, Math.max(id + 1, crashes.length * 2));
+          }
+          crashes[id] += delta;
+          // Only the first crash and the last restart of overlapping windows take effect
+          if (activate && crashes[id] == 1) {
+            getNode(id).crash();
+          } else if (!activate && crashes[id] == 0 && ChurnEngine.isOnline(getNode(id))) {
+            // A node that left the network resumes when it rejoins
+            getNode(id).restart();
+          }
+        }
+        break;
+      default:
+        break;
+    }
+    activeFaults += delta;
+    active = activeFaults > 0;
+    printFault(fault, activate);
+  }
+
+  /**
+   * Loads the fault schedule from the provided file and schedules every fault. Each line has the
+   * format
+   *
+   * <p><em>start end type arguments</em>
+   *
+   * <p>where <em>start</em> and <em>end</em> are in milliseconds (a negative end never
+   * deactivates the fault) and <em>type arguments</em> is one of
+   *
+   * <p><em>PARTITION regions regions</em>, <em>CRASH nodeIDs</em>, <em>DELAY regions regions
+   * factor</em> or <em>LOSS probability</em>.
+   *
+   * <p>Sets of regions and node ids are comma separated, regions are given by name or index.
+   * Empty lines and lines starting with # are ignored. A missing file schedules no faults.
+   *
+   * @param uri the location of the schedule
+   * @throws UncheckedIOException     if the schedule cannot be read
+   * @throws IllegalArgumentException if a line is malformed
+   */
+  public static void loadSchedule(URI uri) {
+    File file = new File(uri);
+    if (!file.exists()) {
+      return;
+    }
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        schedule(parseFault(line.split("\\s+"), lineNumber));
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Cannot read the fault schedule " + uri, ex);
+    }
+  }
+
+  /**
+   * Parses a line of the fault schedule.
+   *
+   * @param tokens     the tokens of the line
+   * @param lineNumber the line number, for error messages
+   * @return the fault
+   * @throws IllegalArgumentException if the line is malformed
+   */
+  private static Fault parseFault(String[] tokens, int lineNumber) {
+    if (tokens.length < 3) {
+      throw new IllegalArgumentException("Missing fault type on line " + lineNumber);
+    }
+    long start = parseLong(tokens[0], lineNumber);
+    long end = parseLong(tokens[1], lineNumber);
+    Fault.Type type;
+    try {
+      type = Fault.Type.valueOf(tokens[2]);
+    } catch (IllegalArgumentException ex) {
+      throw new IllegalArgumentException("Unknown fault type on line " + lineNumber, ex);
+    }
+    int arguments = type == Fault.Type.DELAY ? 3 : type == Fault.Type.PARTITION ? 2 : 1;
+    if (tokens.length != 3 + arguments) {
+      throw new IllegalArgumentException(
+          "Wrong number of arguments for " + type + " on line " + lineNumber);
+    }
+    switch (type) {
+      case PARTITION:
+        return new Fault(type, start, end, parseRegions(tokens[3], lineNumber),
+                         parseRegions(tokens[4], lineNumber), 0);
+      case DELAY:
+        double factor = parseDouble(tokens[5], lineNumber);
+        if (!(factor > 0)) {
+          throw new IllegalArgumentException("Non-positive delay factor on line " + lineNumber);
+        }
+        return new Fault(type, start, end, parseRegions(tokens[3], lineNumber),
+                         parseRegions(tokens[4], lineNumber), factor);
+      case LOSS:
+        double probability = parseDouble(tokens[3], lineNumber);
+        if (!(probability >= 0 && probability <= 1)) {
+          throw new IllegalArgumentException("Loss probability out of range on line " + lineNumber);
+        }
+        return new Fault(type, start, end, null, null, probability);
+      case CRASH:
+      default:
+        String[] tokenIDs = tokens[3].split(",");
+        int[] ids = new int[tokenIDs.length];
+        for (int i = 0; i < ids.length; i++) {
+          ids[i] = (int) parseLong(tokenIDs[i], lineNumber);
+          if (ids[i] < 0 || getNode(ids[i]) == null) {
+            throw new IllegalArgumentException("Unknown node id on line " + lineNumber);
+          }
+        }
+        return new Fault(type, start, end, ids, null, 0);
+    }
+  }
+
+  /**
+   * Parses a comma separated set of region names or indexes.
+   *
+   * @param token      the set of regions
+   * @param lineNumber the line number, for error messages
+   * @return the region indexes
+   * @throws IllegalArgumentException if a region is unknown
+   */
+  private static int[] parseRegions(String token, int lineNumber) {
+    String[] regions = token.split(",");
+    int[] indexes = new int[regions.length];
+    for (int i = 0; i < regions.length; i++) {
+      indexes[i] = REGION_LIST.contains(regions[i]) ? REGION_LIST.indexOf(regions[i])
+          : regions[i].matches("\\d{1,9}") ? Integer.parseInt(regions[i]) : -1;
+      if (indexes[i] < 0 || indexes[i] >= REGION_LIST.size()) {
+        throw new IllegalArgumentException("Unknown region on line " + lineNumber);
+      }
+    }
+    return indexes;
+  }
+
+  private static long parseLong(String token, int lineNumber) {
+    try {
+      return Long.parseLong(token);
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Malformed number on line " + lineNumber, ex);
+    }
+  }
+
+  private static double parseDouble(String token, int lineNumber) {
+    try {
+      return Double.parseDouble(token);
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Malformed number on line " + lineNumber, ex);
+    }
+  }
+
+  /**
+   * Prints the number of dropped messages, if any fault was scheduled.
+   */
+  public static void printStatistics() {
+    if (scheduledFaults == 0) {
+      return;
+    }
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"fault-statistics\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"scheduled-faults\":" + scheduledFaults + ",");
+    OUT_JSON_FILE.print("\"dropped-messages\":" + droppedMessages);
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
+
+  //TODO add example
+  private static void printFault(Fault fault, boolean activate) {
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"" + (activate ? "fault-start" : "fault-end") + "\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"timestamp\":" + getCurrentTime() + ",");
+    OUT_JSON_FILE.print("\"fault-type\":\"" + fault.getType() + "\"");
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
+}
@@ -17,14 +17,22 @@
 package simblock.simulator;
 
 
+import simblock.auxiliary.IntHashMap;
 import simblock.auxiliary.MyLogger;
 import simblock.block.Block;
 import simblock.block.SamplePoSBlock;
 import simblock.node.*;
 import simblock.node.consensus.AlgorandConsensus;
 import simblock.node.consensus.SampleProofOfStake;
+import simblock.node.routing.BitcoinCoreTable;
+import simblock.node.routing.EdgeListTable;
+import simblock.node.routing.KademliaTable;
+import simblock.node.routing.LatencyAwareTable;
+import simblock.node.routing.TwoTierTable;
 import simblock.settings.SimulationConfiguration;
 import simblock.simulator.statistics.AlgorandStatistics;
+import simblock.simulator.statistics.ReorgStatistics;
+import simblock.simulator.statistics.TopologyAnalyzer;
 import simblock.task.AbstractMintingTask;
 import simblock.task.algorand.AlgorandIncStepTask;
 
@@ -36,6 +44,7 @@ import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.SimpleFormatter;
 
+import static simblock.settings.NetworkConfiguration.TOPOLOGY_GENERATOR;
 import static simblock.settings.SimulationConfiguration.*;
 import static simblock.simulator.Network.*;
 import static simblock.simulator.Simulator.*;
@@ -117,6 +126,14 @@ public class Main {
 
     // Setup network
     constructNetworkWithAllNodes(NUM_OF_NODES);
+    if (TOPOLOGY_REPORT) {
+      writeGraph(0);
+    }
+
+    // Schedule the faults to inject
+    FaultInjector.loadSchedule(CONF_FILE_URI.resolve(FAULT_SCHEDULE_FILE));
+    // Schedule the first departures of the churn nodes
+    ChurnEngine.start();
 
     printProtocol(PROTOCOL_FAMILY);
     if(PROTOCOL_FAMILY.equals("POS")) {
@@ -159,6 +176,11 @@ public class Main {
     if(PROTOCOL_FAMILY.equals("POS")) {
       AlgorandStatistics.getInstance().printStatistics();
     }
+    if(PROTOCOL_FAMILY.equals("POW")) {
+      ReorgStatistics.printStatistics();
+    }
+    FaultInjector.printStatistics();
+    ChurnEngine.printStatistics();
     // Print propagation information about all blocks
     printAllPropagation();
 
@@ -175,17 +197,21 @@ public class Main {
       block = block.getParent();
     }
 
-    Set<Block> orphans = new HashSet<>();
+    IntHashMap<Block> orphans = new IntHashMap<>();
     int averageOrphansSize = 0;
     // Gather all known orphans
     for (Node node : getSimulatedNodes()) {
-      orphans.addAll(node.getOrphans());
-      averageOrphansSize += node.getOrphans().size();
+      for (Block orphan : node.getOrphans()) {
+        orphans.put(orphan.getId(), orphan);
+      }
+      averageOrphansSize += node.getOrphans().size() + node.getArchivedOrphans();
     }
     averageOrphansSize = averageOrphansSize / getSimulatedNodes().size();
 
     // Record orphans to the list of all known blocks
-    blocks.addAll(orphans);
+    for (Block orphan : orphans) {
+      blocks.add(orphan);
+    }
 
     ArrayList<Block> blockList = new ArrayList<>(blocks);
 
@@ -218,7 +244,7 @@ public class Main {
       PrintWriter pw = new PrintWriter(new BufferedWriter(fw));
 
       for (Block b : blockList) {
-        if (!orphans.contains(b)) {
+        if (!orphans.containsKey(b.getId())) {
           pw.println("OnChain : " + b.getHeight() + " : " + b);
         } else {
           pw.println("Orphan : " + b.getHeight() + " : " + b);
@@ -330,6 +356,40 @@ public class Main {
    * @param numNodes the num nodes
    */
   public static void constructNetworkWithAllNodes(int numNodes) {
+    if (TABLE.equals(EdgeListTable.class.getName())) {
+      // The nodes and links are read from the edge list, a snapshot would not be faster
+      EdgeListTable.loadNetwork(CONF_FILE_URI.resolve(EDGE_LIST_FILE));
+    } else if (!(TOPOLOGY_SNAPSHOT && TopologySnapshot.load(numNodes))) {
+      // Load the nodes and links of an earlier run with the same network configuration
+      generateNodesAndLinks(numNodes);
+      if (TOPOLOGY_SNAPSHOT) {
+        TopologySnapshot.save(numNodes);
+      }
+    }
+
+    if(PROTOCOL_FAMILY.equals("POS")) {
+      SamplePoSBlock genesis = SamplePoSBlock.genesisBlock(getSimulatedNodes().get(0));
+      for(Node node : getSimulatedNodes()) {
+        // Every node starts with the genesis block in its chain (sortition requires access to the stakes
+        //  which are unknown if there is no initial block in the chain)
+        // TODO(miguel) is there a more elegant alternative?
+        node.addToChain(genesis);
+        // Triggers the start of the protocol for all node
+        putTask(new AlgorandIncStepTask(node, 2*AlgorandConsensus.LAMBDA, 1));
+      }
+    }
+    else {
+      // Designates a random node (nodes in list are randomized) to mint the genesis block
+      getSimulatedNodes().get(0).genesisBlock();
+    }
+  }
+  /**
+   * Generates the nodes, drawing their region, degree, mining power and flags, and links them
+   * with the configured routing table.
+   *
+   * @param numNodes the num nodes
+   */
+  private static void generateNodesAndLinks(int numNodes) {
 
     // Random distribution of nodes per region
     double[] regionDistribution = getRegionDistribution();
@@ -348,54 +408,72 @@ public class Main {
     for (int id = 1; id <= numNodes; id++) {
       // Each node gets assigned a region, its degree, mining power, routing table and
       // consensus algorithm
-      Node node;
-      if(PROTOCOL_FAMILY.equals("POW")) {
-        node = new Node(id, degreeList.get(id - 1) + 1, regionList.get(id - 1), genMiningPower(), TABLE,
-                ALGO, useCBRNodes.get(id - 1), churnNodes.get(id - 1));
-      }
-      else {
-        node = new AlgorandNode(
-                id, degreeList.get(id - 1) + 1, regionList.get(id - 1), genMiningPower(), TABLE,
-                ALGO, useCBRNodes.get(id - 1), churnNodes.get(id - 1)
-        );
-      }
+      Node node = createNode(id, degreeList.get(id - 1) + 1, regionList.get(id - 1),
+                             genMiningPower(), useCBRNodes.get(id - 1), churnNodes.get(id - 1));
       // Add the node to the list of simulated nodes
       addNode(node);
-
-      OUT_JSON_FILE.print("{");
-      OUT_JSON_FILE.print("\"kind\":\"add-node\",");
-      OUT_JSON_FILE.print("\"content\":{");
-      OUT_JSON_FILE.print("\"timestamp\":0,");
-      OUT_JSON_FILE.print("\"node-id\":" + id + ",");
-      OUT_JSON_FILE.print("\"region-id\":" + regionList.get(id - 1));
-      OUT_JSON_FILE.print("}");
-      OUT_JSON_FILE.print("},");
-      OUT_JSON_FILE.flush();
-
+      initNode(node);
+      printAddNode(node);
     }
 
     // Link newly generated nodes
-    for (Node node : getSimulatedNodes()) {
-      node.joinNetwork();
-    }
-
-    if(PROTOCOL_FAMILY.equals("POS")) {
-      SamplePoSBlock genesis = SamplePoSBlock.genesisBlock(getSimulatedNodes().get(0));
-      for(Node node : getSimulatedNodes()) {
-        // Every node starts with the genesis block in its chain (sortition requires access to the stakes
-        //  which are unknown if there is no initial block in the chain)
-        // TODO(miguel) is there a more elegant alternative?
-        node.addToChain(genesis);
-        // Triggers the start of the protocol for all node
-        putTask(new AlgorandIncStepTask(node, 2*AlgorandConsensus.LAMBDA, 1));
+    if (!TOPOLOGY_GENERATOR.equals("RANDOM")) {
+      TopologyGenerator.generate(getSimulatedNodes(), random.nextLong());
+    } else if (TABLE.equals(BitcoinCoreTable.class.getName())
+        || TABLE.equals(LatencyAwareTable.class.getName())) {
+      BitcoinCoreTable.initTables(getSimulatedNodes(), random.nextLong());
+    } else if (TABLE.equals(TwoTierTable.class.getName())) {
+      TwoTierTable.initTables(getSimulatedNodes(), random.nextLong());
+    } else if (TABLE.equals(KademliaTable.class.getName())) {
+      KademliaTable.initTables(getSimulatedNodes(), random.nextLong());
+    } else {
+      for (Node node : getSimulatedNodes()) {
+        node.joinNetwork();
       }
     }
-    else {
-      // Designates a random node (nodes in list are randomized) to mint the genesis block
-      getSimulatedNodes().get(0).genesisBlock();
+  }
+
+  /**
+   * Creates a node of the configured protocol family, using the configured routing table and
+   * consensus algorithm.
+   *
+   * @param id            the node id
+   * @param numConnection the number of connections a node can have
+   * @param region        the region
+   * @param miningPower   the mining power
+   * @param useCBR        whether the node uses compact block relay
+   * @param isChurnNode   whether the node causes churn
+   * @return the node
+   */
+  public static Node createNode(
+      int id, int numConnection, int region, long miningPower, boolean useCBR,
+      boolean isChurnNode
+  ) {
+    if(PROTOCOL_FAMILY.equals("POW")) {
+      return new Node(id, numConnection, region, miningPower, TABLE, ALGO, useCBR, isChurnNode);
     }
+    return new AlgorandNode(id, numConnection, region, miningPower, TABLE, ALGO, useCBR,
+                            isChurnNode);
+  }
+
+  /**
+   * Logs the addition of the provided node to the logfile.
+   *
+   * @param node the node
+   */
+  public static void printAddNode(Node node) {
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"add-node\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"timestamp\":0,");
+    OUT_JSON_FILE.print("\"node-id\":" + node.getNodeID() + ",");
+    OUT_JSON_FILE.print("\"region-id\":" + node.getRegion());
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
   }
 
+
   /**
    * Network information when block height is <em>blockHeight</em>, in format:
    *
@@ -403,6 +481,9 @@ public class Main {
    *
    * <p>meaning there is a connection from nodeID_1 to right nodeID_1.
    *
+   * <p>If {@link SimulationConfiguration#TOPOLOGY_REPORT} is enabled, the analysis of the graph is
+   * written to <em>blockHeight</em>-report.json.
+   *
    * @param blockHeight the index of the graph and the current block height
    */
   //TODO use logger
@@ -412,15 +493,19 @@ public class Main {
           new File(OUT_FILE_URI.resolve("./graph/" + blockHeight + ".txt")), false);
       PrintWriter pw = new PrintWriter(new BufferedWriter(fw));
 
-      for (int index = 1; index <= getSimulatedNodes().size(); index++) {
-        Node node = getSimulatedNodes().get(index - 1);
-        for (int i = 0; i < node.getNeighbors().size(); i++) {
-          Node neighbor = node.getNeighbors().get(i);
-          pw.println(node.getNodeID() + " " + neighbor.getNodeID());
+      int[] targets = Topology.getTargets();
+      for (Node node : getSimulatedNodes()) {
+        int offset = Topology.getOffset(node.getNodeID());
+        for (int i = offset; i < offset + Topology.getDegree(node.getNodeID()); i++) {
+          pw.println(node.getNodeID() + " " + targets[i]);
         }
       }
       pw.close();
 
+      if (TOPOLOGY_REPORT) {
+        new TopologyAnalyzer().writeReport(
+            new File(OUT_FILE_URI.resolve("./graph/" + blockHeight + "-report.json")));
+      }
     } catch (IOException ex) {
       ex.printStackTrace();
     }
@@ -19,13 +19,21 @@ package simblock.simulator;
 import static simblock.settings.NetworkConfiguration.DEGREE_DISTRIBUTION;
 import static simblock.settings.NetworkConfiguration.DOWNLOAD_BANDWIDTH;
 import static simblock.settings.NetworkConfiguration.LATENCY;
+import static simblock.settings.NetworkConfiguration.LATENCY_MODEL;
 import static simblock.settings.NetworkConfiguration.REGION_DISTRIBUTION;
 import static simblock.settings.NetworkConfiguration.REGION_LIST;
+import static simblock.settings.NetworkConfiguration.TCP_INITIAL_WINDOW;
+import static simblock.settings.NetworkConfiguration.TCP_MAX_WINDOW;
+import static simblock.settings.NetworkConfiguration.TCP_MSS;
+import static simblock.settings.NetworkConfiguration.TRANSFER_MODEL;
 import static simblock.settings.NetworkConfiguration.UPLOAD_BANDWIDTH;
+import static simblock.settings.SimulationConfiguration.SERIALIZATION_COST_PER_BYTE;
 import static simblock.simulator.Main.STATIC_JSON_FILE;
 import static simblock.simulator.Main.random;
 
+import java.util.Arrays;
 import java.util.List;
+import simblock.node.Node;
 import simblock.settings.NetworkConfiguration;
 
 /**
@@ -36,6 +44,23 @@ import simblock.settings.NetworkConfiguration;
 // TODO how is this degree distribution calculated and what does the double array mean
 public class Network {
 
+  /**
+   * Whether latencies are computed from per-node network coordinates, see {@link
+   * NetworkConfiguration#LATENCY_MODEL}.
+   */
+  private static final boolean USE_COORDINATES = LATENCY_MODEL.equals("COORDINATE");
+
+  /**
+   * Whether block transfers follow the TCP model, see {@link NetworkConfiguration#TRANSFER_MODEL}.
+   */
+  private static final boolean USE_TCP = TRANSFER_MODEL.equals("TCP");
+
+  /**
+   * The bandwidth of nodes that do not use the bandwidth of their region, indexed by node id, 0
+   * if unset.
+   */
+  private static long[] nodeBandwidths = new long[0];
+
   /**
    * Gets latency according with 20% variance pallet distribution.
    *
@@ -44,7 +69,50 @@ public class Network {
    * @return the calculated latency
    */
   public static final long getLatency(int from, int to) {
-    long mean = LATENCY[from][to];
+    return getParetoLatency(LATENCY[from][to]);
+  }
+
+  /**
+   * Gets the latency between two nodes according to the configured latency model, either from
+   * the regions of the nodes or from their network coordinates, inflated by active delay faults.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the calculated latency
+   */
+  public static final long getLatency(Node from, Node to) {
+    long latency;
+    if (USE_COORDINATES) {
+      latency = getParetoLatency(
+          NetworkCoordinates.getMeanLatency(from.getNodeID(), to.getNodeID()));
+    } else {
+      latency = getLatency(from.getRegion(), to.getRegion());
+    }
+    if (FaultInjector.isActive()) {
+      latency = FaultInjector.inflateLatency(latency, from, to);
+    }
+    return latency;
+  }
+
+  /**
+   * Assigns the network coordinates of a newly created node, if the coordinate latency model is
+   * used.
+   *
+   * @param node the node
+   */
+  public static void initNode(Node node) {
+    if (USE_COORDINATES) {
+      NetworkCoordinates.assignCoordinates(node);
+    }
+  }
+
+  /**
+   * Draws a latency around the provided mean with 20% variance pallet distribution.
+   *
+   * @param mean the mean latency
+   * @return the calculated latency
+   */
+  private static long getParetoLatency(double mean) {
     double shape = 0.2 * mean;
     double scale = mean - 5;
     return Math.round(scale / Math.pow(random.nextDouble(), 1.0 / shape));
@@ -63,6 +131,162 @@ public class Network {
     return Math.min(UPLOAD_BANDWIDTH[from], DOWNLOAD_BANDWIDTH[to]);
   }
 
+  /**
+   * Gets the bandwidth between two nodes, see {@link #getBandwidth(int, int)}. Nodes with a
+   * bandwidth of their own, see {@link #setBandwidth(int, long)}, use it instead of the bandwidth
+   * of their region.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the bandwidth
+   */
+  public static final long getBandwidth(Node from, Node to) {
+    return getBandwidth(from, to, 1);
+  }
+
+  /**
+   * Gets the bandwidth between two nodes when the sender splits its upload bandwidth evenly
+   * among the provided number of concurrent uploads, see {@link #getBandwidth(Node, Node)}.
+   *
+   * @param from         the sending node
+   * @param to           the receiving node
+   * @param uploadShares the number of concurrent uploads of the sending node
+   * @return the bandwidth
+   */
+  public static final long getBandwidth(Node from, Node to, int uploadShares) {
+    int fromID = from.getNodeID();
+    int toID = to.getNodeID();
+    long upload = fromID < nodeBandwidths.length && nodeBandwidths[fromID] > 0
+        ? nodeBandwidths[fromID] : UPLOAD_BANDWIDTH[from.getRegion()];
+    long download = toID < nodeBandwidths.length && nodeBandwidths[toID] > 0
+        ? nodeBandwidths[toID] : DOWNLOAD_BANDWIDTH[to.getRegion()];
+    return Math.min(upload / uploadShares, download);
+  }
+
+  /**
+   * Sets the upload and download bandwidth of a node, replacing the bandwidth of its region.
+   *
+   * @param nodeID    the node id
+   * @param bandwidth the bandwidth in bit per second
+   */
+  public static void setBandwidth(int nodeID, long bandwidth) {
+    if (nodeID >= nodeBandwidths.length) {
+      int length = Math.max(nodeID + 1, 2 * nodeBandwidths.length);
+      nodeBandwidths = Arrays.copyOf(nodeBandwidths, length);
+    }
+    nodeBandwidths[nodeID] = bandwidth;
+  }
+
+  /**
+   * Gets the time it takes to put a message of the provided size on the link between two nodes,
+   * its size in bits divided by the bandwidth plus the serialization cost of every byte.
+   * Propagation latency is not included.
+   *
+   * @param size the message size in bytes
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the transmission delay in milliseconds
+   */
+  public static final long getTransmissionDelay(long size, Node from, Node to) {
+    return getTransmissionDelay(size, from, to, 1);
+  }
+
+  /**
+   * Gets the transmission delay between two nodes when the sender splits its upload bandwidth
+   * among concurrent uploads, see {@link #getTransmissionDelay(long, Node, Node)}.
+   *
+   * @param size         the message size in bytes
+   * @param from         the sending node
+   * @param to           the receiving node
+   * @param uploadShares the number of concurrent uploads of the sending node
+   * @return the transmission delay in milliseconds
+   */
+  public static final long getTransmissionDelay(long size, Node from, Node to, int uploadShares) {
+    // Convert bytes to bits and divide by the bandwidth expressed as bit per millisecond
+    return size * 8 / (getBandwidth(from, to, uploadShares) / 1000)
+        + size * SERIALIZATION_COST_PER_BYTE / 1000000;
+  }
+
+  /**
+   * Gets the time it takes to transfer a block sized message between two nodes, until its last
+   * byte leaves the sender. Propagation latency of that last byte is not included.
+   *
+   * <p>With the TCP transfer model the congestion window starts at {@link
+   * NetworkConfiguration#TCP_INITIAL_WINDOW} segments and doubles every round trip until it
+   * reaches the window cap, the smaller of the bandwidth-delay product and {@link
+   * NetworkConfiguration#TCP_MAX_WINDOW}. Every round whose window is below the bandwidth-delay
+   * product stalls for a full round trip waiting for acknowledgements, every other byte is sent
+   * at the link bandwidth. The rounds are counted in closed form, so the cost does not depend on
+   * the message size.
+   *
+   * @param size the message size in bytes
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the transfer delay in milliseconds
+   */
+  public static final long getTransferDelay(long size, Node from, Node to) {
+    return getTransferDelay(size, from, to, 1);
+  }
+
+  /**
+   * Gets the transfer delay between two nodes when the sender splits its upload bandwidth evenly
+   * among the provided number of concurrent uploads, see {@link #getTransferDelay(long, Node,
+   * Node)}. The share of an upload is fixed when it starts.
+   *
+   * @param size         the message size in bytes
+   * @param from         the sending node
+   * @param to           the receiving node
+   * @param uploadShares the number of concurrent uploads of the sending node
+   * @return the transfer delay in milliseconds
+   */
+  public static final long getTransferDelay(long size, Node from, Node to, int uploadShares) {
+    long transmission = getTransmissionDelay(size, from, to, uploadShares);
+    if (!USE_TCP) {
+      return transmission;
+    }
+    double rtt = getMeanLatency(from, to) + getMeanLatency(to, from);
+    double bdp = getBandwidth(from, to, uploadShares) / 8000.0 * rtt;
+    double initialWindow = TCP_INITIAL_WINDOW * TCP_MSS;
+    double windowCap = Math.min(bdp, TCP_MAX_WINDOW);
+
+    // Slow start rounds before the window reaches its cap and the bytes sent in them
+    long slowStartRounds = windowCap > initialWindow
+        ? (long) Math.ceil(Math.log(windowCap / initialWindow) / Math.log(2)) : 0;
+    double slowStartBytes = initialWindow * (Math.pow(2, slowStartRounds) - 1);
+
+    long stalledRounds;
+    if (size <= slowStartBytes) {
+      // The message fits in slow start, every round but the last one stalls
+      stalledRounds = (long) Math.ceil(Math.log(size / initialWindow + 1) / Math.log(2)) - 1;
+    } else if (windowCap >= bdp) {
+      // The window covers the bandwidth-delay product, the remaining bytes flow continuously
+      stalledRounds = slowStartRounds;
+    } else {
+      // Window limited, every full window of the remaining bytes stalls
+      long windowRounds = (long) Math.ceil((size - slowStartBytes) / windowCap);
+      stalledRounds = slowStartRounds + windowRounds - 1;
+    }
+    return transmission + Math.round(Math.max(stalledRounds, 0) * rtt);
+  }
+
+  /**
+   * Gets the mean one way latency between two nodes according to the configured latency model,
+   * inflated by active delay faults.
+   *
+   * @param from the sending node
+   * @param to   the receiving node
+   * @return the mean latency in milliseconds
+   */
+  public static double getMeanLatency(Node from, Node to) {
+    double latency = USE_COORDINATES
+        ? NetworkCoordinates.getMeanLatency(from.getNodeID(), to.getNodeID())
+        : LATENCY[from.getRegion()][to.getRegion()];
+    if (FaultInjector.isActive()) {
+      latency = FaultInjector.inflateLatency(Math.round(latency), from, to);
+    }
+    return latency;
+  }
+
   /**
    * Gets region list.
    *
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.NetworkConfiguration.LATENCY;
+import static simblock.simulator.Main.random;
+
+import java.util.Arrays;
+import simblock.node.Node;
+
+/**
+ * The type Network coordinates gives every node a synthetic Vivaldi-style network coordinate, a
+ * point on a two dimensional Euclidean plane plus a height modelling the access link. The
+ * latency between two nodes is the distance between their points plus both heights.
+ *
+ * <p>Region centroids are fitted once to the region {@link
+ * simblock.settings.NetworkConfiguration#LATENCY} matrix, nodes are then scattered around the
+ * centroid of their region. Only three floats are kept per node, so memory grows with the number
+ * of nodes instead of with the square of the number of locations.
+ */
+public class NetworkCoordinates {
+
+  /**
+   * Share of the intra-region latency that is attributed to the height of a single node.
+   */
+  static final double HEIGHT_SHARE = 0.4;
+
+  /**
+   * Standard deviation of the scattering of nodes around their region centroid, as a share of
+   * the intra-region latency. Two nodes of the same region are then on average 0.2 times the
+   * intra-region latency apart, which together with both heights adds up to that latency.
+   */
+  static final double SPREAD_SHARE = 0.113;
+
+  /**
+   * Number of Vivaldi rounds used to fit the region centroids.
+   */
+  static final int FIT_ROUNDS = 2000;
+
+  /**
+   * The smallest mean latency handed out, in milliseconds. Keeps the Pareto distribution used by
+   * {@link Network} well defined for nodes that happen to be very close to each other.
+   */
+  static final double MIN_LATENCY = 10;
+
+  /**
+   * Fitted region centroids, indexed by region.
+   */
+  private static double[] regionX;
+  private static double[] regionY;
+
+  /**
+   * Node coordinates and heights, indexed by node id.
+   */
+  private static float[] nodeX = new float[0];
+  private static float[] nodeY = new float[0];
+  private static float[] nodeHeight = new float[0];
+
+  /**
+   * Assigns synthetic coordinates to the provided node, scattered around the centroid of its
+   * region.
+   *
+   * @param node the node
+   */
+  public static void assignCoordinates(Node node) {
+    if (regionX == null) {
+      fitRegions();
+    }
+    int id = node.getNodeID();
+    if (id >= nodeX.length) {
+      int length = Math.max(id + 1, nodeX.length * 2);
+      nodeX = Arrays.copyOf(nodeX, length);
+      nodeY = Arrays.copyOf(nodeY, length);
+      nodeHeight = Arrays.copyOf(nodeHeight, length);
+    }
+    int region = node.getRegion();
+    double local = LATENCY[region][region];
+    nodeX[id] = (float) (regionX[region] + random.nextGaussian() * SPREAD_SHARE * local);
+    nodeY[id] = (float) (regionY[region] + random.nextGaussian() * SPREAD_SHARE * local);
+    // Heights vary between half and one and a half times the regional share
+    nodeHeight[id] = (float) (HEIGHT_SHARE * local * (0.5 + random.nextDouble()));
+  }
+
+  /**
+   * Gets the coordinates of a node.
+   *
+   * @param nodeID the node id
+   * @return the x and y coordinates and the height
+   */
+  public static float[] getCoordinates(int nodeID) {
+    return new float[] {nodeX[nodeID], nodeY[nodeID], nodeHeight[nodeID]};
+  }
+
+  /**
+   * Sets the coordinates of a node, for instance read from a snapshot.
+   *
+   * @param nodeID the node id
+   * @param x      the x coordinate
+   * @param y      the y coordinate
+   * @param height the height
+   */
+  public static void setCoordinates(int nodeID, float x, float y, float height) {
+    if (nodeID >= nodeX.length) {
+      int length = Math.max(nodeID + 1, nodeX.length * 2);
+      nodeX = Arrays.copyOf(nodeX, length);
+      nodeY = Arrays.copyOf(nodeY, length);
+      nodeHeight = Arrays.copyOf(nodeHeight, length);
+    }
+    nodeX[nodeID] = x;
+    nodeY[nodeID] = y;
+    nodeHeight[nodeID] = height;
+  }
+
+  /**
+   * Gets the mean latency between two nodes, the Euclidean distance of their coordinates plus
+   * both heights.
+   *
+   * @param from the id of the sending node
+   * @param to   the id of the receiving node
+   * @return the mean latency in milliseconds
+   */
+  public static double getMeanLatency(int from, int to) {
+    double dx = nodeX[from] - nodeX[to];
+    double dy = nodeY[from] - nodeY[to];
+    double latency = Math.sqrt(dx * dx + dy * dy) + nodeHeight[from] + nodeHeight[to];
+    return Math.max(latency, MIN_LATENCY);
+  }
+
+  /**
+   * Fits the region centroids to the latency matrix. The target distance between two regions is
+   * their latency minus the average heights of their nodes, every Vivaldi round moves each
+   * centroid along the error of each of its pairs with a decaying step. The fit is
+   * deterministic and does not consume the simulation random source.
+   */
+  private static void fitRegions() {
+    int regions = LATENCY.length;
+    regionX = new double[regions];
+    regionY = new double[regions];
+    double[][] target = new double[regions][regions];
+    for (int i = 0; i < regions; i++) {
+      // Start on a circle so that no two centroids share a position
+      double angle = 2 * Math.PI * i / regions;
+      regionX[i] = 100 * Math.cos(angle);
+      regionY[i] = 100 * Math.sin(angle);
+      for (int j = 0; j < regions; j++) {
+        double heights = HEIGHT_SHARE * (LATENCY[i][i] + LATENCY[j][j]);
+        target[i][j] = i == j ? 0 : Math.max(LATENCY[i][j] - heights, 1);
+      }
+    }
+
+    for (int round = 0; round < FIT_ROUNDS; round++) {
+      double delta = 0.25 * (1 - (double) round / FIT_ROUNDS) + 0.01;
+      for (int i = 0; i < regions; i++) {
+        for (int j = 0; j < regions; j++) {
+          if (i == j) {
+            continue;
+          }
+          double dx = regionX[i] - regionX[j];
+          double dy = regionY[i] - regionY[j];
+          double distance = Math.sqrt(dx * dx + dy * dy);
+          if (distance == 0) {
+            continue;
+          }
+          double error = target[i][j] - distance;
+          regionX[i] += delta * error * dx / distance;
+          regionY[i] += delta * error * dy / distance;
+        }
+      }
+    }
+  }
+}
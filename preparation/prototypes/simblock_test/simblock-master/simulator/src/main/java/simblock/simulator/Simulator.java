@@ -19,9 +19,10 @@ package simblock.simulator;
 import static simblock.simulator.Timer.getCurrentTime;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
+import simblock.auxiliary.IntHashMap;
 import simblock.block.Block;
+import simblock.block.BlockStore;
 import simblock.node.Node;
 
 
@@ -36,6 +37,11 @@ public class Simulator {
    */
   private static final ArrayList<Node> simulatedNodes = new ArrayList<>();
 
+  /**
+   * The simulated nodes, indexed by node id.
+   */
+  private static Node[] nodesByID = new Node[0];
+
   /**
    * The target block interval in milliseconds.
    */
@@ -50,6 +56,16 @@ public class Simulator {
     return simulatedNodes;
   }
 
+  /**
+   * Get the simulated node with the provided id.
+   *
+   * @param nodeID the node id
+   * @return the node, or null if no simulated node has that id
+   */
+  public static Node getNode(int nodeID) {
+    return nodeID < nodesByID.length ? nodesByID[nodeID] : null;
+  }
+
   /**
    * Get target block interval.
    *
@@ -75,6 +91,11 @@ public class Simulator {
    */
   public static void addNode(Node node) {
     simulatedNodes.add(node);
+    int id = node.getNodeID();
+    if (id >= nodesByID.length) {
+      nodesByID = Arrays.copyOf(nodesByID, Math.max(id + 1, 2 * nodesByID.length));
+    }
+    nodesByID[id] = node;
   }
 
   /**
@@ -85,6 +106,7 @@ public class Simulator {
   @SuppressWarnings("unused")
   public static void removeNode(Node node) {
     simulatedNodes.remove(node);
+    nodesByID[node.getNodeID()] = null;
   }
 
   /**
@@ -104,53 +126,82 @@ public class Simulator {
   }
 
   /**
-   * A list of observed {@link Block} instances.
+   * The number of observed blocks whose propagation times are kept before they are printed.
+   */
+  private static final int OBSERVED_BLOCKS = 11;
+
+  /**
+   * A list of observed {@link Block} instances, in order of first arrival, whose propagation times
+   * are kept.
    */
   private static final ArrayList<Block> observedBlocks = new ArrayList<>();
 
   /**
-   * A list of observed block propagation times. The map key represents the id of the node that
-   * has seen the
-   * block, the value represents the difference between the current time and the block minting
-   * time, effectively
-   * recording the absolute time it took for a node to witness the block.
+   * The propagation of every block that is not pruned, indexed by block id: which nodes have seen
+   * the block and, for the observed blocks, the difference between the arrival time at every node
+   * and the block minting time, effectively recording the absolute time it took for a node to
+   * witness the block.
    */
-  private static final ArrayList<LinkedHashMap<Integer, Long>> observedPropagations =
-      new ArrayList<>();
+  private static final IntHashMap<BlockPropagation> propagations = new IntHashMap<>();
 
   /**
    * Handle the arrival of a new block. For every observed block, propagation information is
    * updated, and for a new
-   * block propagation information is created.
+   * block propagation information is created. A block that arrives at a node after its
+   * propagation was printed is observed again.
    *
    * @param block the block
    * @param node  the node
    */
   public static void arriveBlock(Block block, Node node) {
-    // If block is already seen by any node
-    if (observedBlocks.contains(block)) {
-      // Get the propagation information for the current block
-      LinkedHashMap<Integer, Long> propagation = observedPropagations.get(
-          observedBlocks.indexOf(block)
-      );
-      // Update information for the new block
-      propagation.put(node.getNodeID(), getCurrentTime() - block.getTime());
-    } else {
-      // If the block has not been seen by any node and there is no memory allocated
-      //TODO move magic number to constant
-      if (observedBlocks.size() > 10) {
+    // Get the propagation information for the current block, if already seen by any node
+    BlockPropagation propagation = propagations.get(block.getId());
+    if (propagation == null || !propagation.isObserved()) {
+      if (observedBlocks.size() >= OBSERVED_BLOCKS) {
         // After the observed blocks limit is reached, log and remove old blocks by FIFO principle
-        printPropagation(observedBlocks.get(0), observedPropagations.get(0));
-        observedBlocks.remove(0);
-        observedPropagations.remove(0);
+        Block oldest = observedBlocks.remove(0);
+        BlockPropagation oldestPropagation = propagations.get(oldest.getId());
+        printPropagation(oldest, oldestPropagation);
+        oldestPropagation.releaseTimes();
+      }
+      if (propagation == null) {
+        propagation = new BlockPropagation(nodesByID.length);
+        propagations.put(block.getId(), propagation);
+      } else {
+        // Keep the nodes that have seen the block, record the times of the new arrivals only
+        propagation.observe();
       }
-      // If the block has not been seen by any node and there is additional memory
-      LinkedHashMap<Integer, Long> propagation = new LinkedHashMap<>();
-      propagation.put(node.getNodeID(), getCurrentTime() - block.getTime());
       // Record the block as seen
       observedBlocks.add(block);
-      // Record the propagation time
-      observedPropagations.add(propagation);
+    }
+    // Record the propagation time
+    propagation.add(node.getNodeID(), getCurrentTime() - block.getTime());
+  }
+
+  /**
+   * Checks if a node has seen a block, as one bit test.
+   *
+   * @param block the block
+   * @param node  the node
+   * @return true if the block arrived at the node, false also if the block was pruned
+   */
+  public static boolean hasSeen(Block block, Node node) {
+    BlockPropagation propagation = propagations.get(block.getId());
+    return propagation != null && propagation.hasSeen(node.getNodeID());
+  }
+
+  /**
+   * Releases the propagation of a pruned block. A block that is still observed has its
+   * propagation times printed first, so the pruned history stays in the output.
+   *
+   * @param blockID the block id
+   */
+  public static void releaseBlock(int blockID) {
+    BlockPropagation propagation = propagations.remove(blockID);
+    if (propagation != null && propagation.isObserved()) {
+      Block block = BlockStore.getBlock(blockID);
+      observedBlocks.remove(block);
+      printPropagation(block, propagation);
     }
   }
 
@@ -164,26 +215,27 @@ public class Simulator {
    * node of the <em>node_ID</em> is reached.
    *
    * @param block       the block
-   * @param propagation the propagation of the provided block as a list of {@link Node} IDs and
-   *                    propagation times
+   * @param propagation the propagation of the provided block, with the {@link Node} IDs in order
+   *                    of arrival and their propagation times
    */
-  public static void printPropagation(Block block, LinkedHashMap<Integer, Long> propagation) {
+  public static void printPropagation(Block block, BlockPropagation propagation) {
     // Print block and its height
     //TODO block does not have a toString method, what is printed here
     System.out.println(block + ":" + block.getHeight());
-    for (Map.Entry<Integer, Long> timeEntry : propagation.entrySet()) {
-      System.out.println(timeEntry.getKey() + "," + timeEntry.getValue());
+    for (int i = 0; i < propagation.getArrivals(); i++) {
+      int nodeID = propagation.getNodeID(i);
+      System.out.println(nodeID + "," + propagation.getTime(nodeID));
     }
     System.out.println();
   }
 
   /**
    * Print propagation information about all blocks, internally relying on
-   * {@link Simulator#printPropagation(Block, LinkedHashMap)}.
+   * {@link Simulator#printPropagation(Block, BlockPropagation)}.
    */
   public static void printAllPropagation() {
-    for (int i = 0; i < observedBlocks.size(); i++) {
-      printPropagation(observedBlocks.get(i), observedPropagations.get(i));
+    for (Block block : observedBlocks) {
+      printPropagation(block, propagations.get(block.getId()));
     }
   }
 }
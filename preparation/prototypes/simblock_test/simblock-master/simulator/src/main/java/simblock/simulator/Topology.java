@@ -0,0 +1,340 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.simulator.Simulator.getNode;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import simblock.node.Node;
+
+/**
+ * The type Topology stores the links of all routing tables in compressed sparse row form. The
+ * row of a node is a slice of the shared {@link #getTargets()} array, starting at {@link
+ * #getOffset(int)} and holding {@link #getDegree(int)} neighbor node ids. Every edge carries an
+ * int of flags in the parallel {@link #getFlags()} array.
+ *
+ * <p>Rows are allocated with spare capacity. A row that outgrows its slice is moved to the tail
+ * of the arrays with twice the capacity, so adding or removing a link only rewrites the row of
+ * that node. The arrays are compacted once the abandoned slices make up half of them.
+ *
+ * <p>Broadcasts iterate the primitive arrays directly, other callers can use the cached {@link
+ * #getNeighbors(int)} views, which read the arrays without copying them.
+ */
+public class Topology {
+
+  /**
+   * Edge flag of a link opened by the row node, an outbound connection.
+   */
+  public static final int FLAG_OUTBOUND = 1;
+
+  /**
+   * Edge flag of a link to a neighbor that selected the row node as one of its high-bandwidth
+   * compact block relay peers, the row node pushes compact blocks over the link unsolicited.
+   */
+  public static final int FLAG_HIGH_BANDWIDTH = 2;
+
+  /**
+   * The capacity of a newly allocated row.
+   */
+  private static final int INITIAL_ROW_CAPACITY = 8;
+
+  /**
+   * Row offsets, degrees and capacities, indexed by node id.
+   */
+  private static int[] offsets = new int[0];
+  private static int[] degrees = new int[0];
+  private static int[] capacities = new int[0];
+
+  /**
+   * Neighbor node ids and edge flags of all rows.
+   */
+  private static int[] targets = new int[0];
+  private static int[] flags = new int[0];
+
+  /**
+   * The used length of the edge arrays, the start of the free tail.
+   */
+  private static int used = 0;
+
+  /**
+   * The length of the abandoned slices in the edge arrays.
+   */
+  private static int garbage = 0;
+
+  /**
+   * Cached neighbor views, indexed by node id.
+   */
+  private static NeighborView[] views = new NeighborView[0];
+
+  /**
+   * Gets the neighbor node ids of all rows. The array is replaced when rows move, it must not be
+   * kept across changes of the topology.
+   *
+   * @return the targets
+   */
+  public static int[] getTargets() {
+    return targets;
+  }
+
+  /**
+   * Gets the edge flags of all rows, parallel to {@link #getTargets()}.
+   *
+   * @return the flags
+   */
+  public static int[] getFlags() {
+    return flags;
+  }
+
+  /**
+   * Gets the offset of the row of a node in the edge arrays.
+   *
+   * @param nodeID the node id
+   * @return the offset
+   */
+  public static int getOffset(int nodeID) {
+    return nodeID < offsets.length ? offsets[nodeID] : 0;
+  }
+
+  /**
+   * Gets the number of neighbors of a node.
+   *
+   * @param nodeID the node id
+   * @return the degree
+   */
+  public static int getDegree(int nodeID) {
+    return nodeID < degrees.length ? degrees[nodeID] : 0;
+  }
+
+  /**
+   * Gets the index of a neighbor in the row of a node.
+   *
+   * @param nodeID the node id
+   * @param target the neighbor node id
+   * @return the index in the row, or -1 if the nodes are not linked
+   */
+  public static int indexOf(int nodeID, int target) {
+    int offset = getOffset(nodeID);
+    int end = offset + getDegree(nodeID);
+    for (int i = offset; i < end; i++) {
+      if (targets[i] == target) {
+        return i - offset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the flags of an edge.
+   *
+   * @param nodeID the node id
+   * @param index  the index of the edge in the row
+   * @return the flags
+   */
+  public static int getEdgeFlags(int nodeID, int index) {
+    return flags[offsets[nodeID] + index];
+  }
+
+  /**
+   * Sets the flags of an edge.
+   *
+   * @param nodeID    the node id
+   * @param index     the index of the edge in the row
+   * @param edgeFlags the flags
+   */
+  public static void setEdgeFlags(int nodeID, int index, int edgeFlags) {
+    flags[offsets[nodeID] + index] = edgeFlags;
+  }
+
+  /**
+   * Counts the edges of a node having all the provided flags.
+   *
+   * @param nodeID    the node id
+   * @param edgeFlags the flags
+   * @return the number of edges
+   */
+  public static int countEdges(int nodeID, int edgeFlags) {
+    int offset = getOffset(nodeID);
+    int end = offset + getDegree(nodeID);
+    int count = 0;
+    for (int i = offset; i < end; i++) {
+      if ((flags[i] & edgeFlags) == edgeFlags) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Appends an edge to the row of a node. The caller checks that the edge does not exist yet.
+   *
+   * @param nodeID    the node id
+   * @param target    the neighbor node id
+   * @param edgeFlags the flags of the edge
+   */
+  public static void addEdge(int nodeID, int target, int edgeFlags) {
+    ensureNode(nodeID);
+    if (degrees[nodeID] == capacities[nodeID]) {
+      moveRow(nodeID, Math.max(INITIAL_ROW_CAPACITY, 2 * capacities[nodeID]));
+    }
+    int index = offsets[nodeID] + degrees[nodeID]++;
+    targets[index] = target;
+    flags[index] = edgeFlags;
+  }
+
+  /**
+   * Removes an edge from the row of a node, keeping the order of the remaining edges.
+   *
+   * @param nodeID the node id
+   * @param target the neighbor node id
+   * @return true if the edge existed
+   */
+  public static boolean removeEdge(int nodeID, int target) {
+    int index = indexOf(nodeID, target);
+    if (index < 0) {
+      return false;
+    }
+    int from = offsets[nodeID] + index;
+    int length = degrees[nodeID] - index - 1;
+    System.arraycopy(targets, from + 1, targets, from, length);
+    System.arraycopy(flags, from + 1, flags, from, length);
+    degrees[nodeID]--;
+    return true;
+  }
+
+  /**
+   * Replaces all rows by the provided ones, for instance read from a {@link TopologySnapshot}.
+   * The edges of the rows are concatenated in node id order.
+   *
+   * @param rowDegrees the degree of every row, indexed by node id
+   * @param rowTargets the neighbor node ids of all rows
+   * @param rowFlags   the edge flags of all rows
+   */
+  public static void load(int[] rowDegrees, int[] rowTargets, int[] rowFlags) {
+    offsets = new int[rowDegrees.length];
+    degrees = rowDegrees.clone();
+    capacities = rowDegrees.clone();
+    views = new NeighborView[rowDegrees.length];
+    int position = 0;
+    for (int nodeID = 0; nodeID < rowDegrees.length; nodeID++) {
+      offsets[nodeID] = position;
+      position += rowDegrees[nodeID];
+    }
+    targets = rowTargets;
+    flags = rowFlags;
+    used = position;
+    garbage = 0;
+  }
+
+  /**
+   * Gets a view of the neighbors of a node. The view is cached and reads the edge arrays on
+   * every access, so it reflects later changes of the row.
+   *
+   * @param nodeID the node id
+   * @return the neighbors
+   */
+  public static List<Node> getNeighbors(int nodeID) {
+    ensureNode(nodeID);
+    if (views[nodeID] == null) {
+      views[nodeID] = new NeighborView(nodeID);
+    }
+    return views[nodeID];
+  }
+
+  /**
+   * Grows the row arrays to hold the provided node id.
+   *
+   * @param nodeID the node id
+   */
+  private static void ensureNode(int nodeID) {
+    if (nodeID >= offsets.length) {
+      int length = Math.max(nodeID + 1, 2 * offsets.length);
+      offsets = Arrays.copyOf(offsets, length);
+      degrees = Arrays.copyOf(degrees, length);
+      capacities = Arrays.copyOf(capacities, length);
+      views = Arrays.copyOf(views, length);
+    }
+  }
+
+  /**
+   * Moves the row of a node to the tail of the edge arrays with the provided capacity.
+   *
+   * @param nodeID   the node id
+   * @param capacity the new capacity
+   */
+  private static void moveRow(int nodeID, int capacity) {
+    if (garbage > used / 2) {
+      compact();
+    }
+    if (used + capacity > targets.length) {
+      int length = Math.max(used + capacity, 2 * targets.length);
+      targets = Arrays.copyOf(targets, length);
+      flags = Arrays.copyOf(flags, length);
+    }
+    System.arraycopy(targets, offsets[nodeID], targets, used, degrees[nodeID]);
+    System.arraycopy(flags, offsets[nodeID], flags, used, degrees[nodeID]);
+    garbage += capacities[nodeID];
+    offsets[nodeID] = used;
+    capacities[nodeID] = capacity;
+    used += capacity;
+  }
+
+  /**
+   * Rewrites the edge arrays without the abandoned slices, rows in node id order.
+   */
+  private static void compact() {
+    int[] newTargets = new int[targets.length];
+    int[] newFlags = new int[flags.length];
+    int position = 0;
+    for (int nodeID = 0; nodeID < offsets.length; nodeID++) {
+      System.arraycopy(targets, offsets[nodeID], newTargets, position, degrees[nodeID]);
+      System.arraycopy(flags, offsets[nodeID], newFlags, position, degrees[nodeID]);
+      offsets[nodeID] = position;
+      position += capacities[nodeID];
+    }
+    targets = newTargets;
+    flags = newFlags;
+    used = position;
+    garbage = 0;
+  }
+
+  /**
+   * A list view of the row of a node.
+   */
+  private static final class NeighborView extends AbstractList<Node> implements RandomAccess {
+    private final int nodeID;
+
+    private NeighborView(int nodeID) {
+      this.nodeID = nodeID;
+    }
+
+    @Override
+    public Node get(int index) {
+      if (index < 0 || index >= degrees[this.nodeID]) {
+        throw new IndexOutOfBoundsException("Index: " + index);
+      }
+      return getNode(targets[offsets[this.nodeID] + index]);
+    }
+
+    @Override
+    public int size() {
+      return degrees[this.nodeID];
+    }
+  }
+}
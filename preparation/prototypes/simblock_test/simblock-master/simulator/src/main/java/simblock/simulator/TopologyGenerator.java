@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.NetworkConfiguration.BA_LINKS_PER_NODE;
+import static simblock.settings.NetworkConfiguration.TOPOLOGY_GENERATOR;
+import static simblock.settings.NetworkConfiguration.WS_REWIRING_PROBABILITY;
+import static simblock.settings.NetworkConfiguration.WS_RING_NEIGHBORS;
+import static simblock.simulator.Topology.FLAG_OUTBOUND;
+
+import java.util.List;
+import java.util.Random;
+import simblock.node.Node;
+import simblock.node.routing.BitcoinCoreTable;
+
+/**
+ * The type Topology generator links the nodes of BitcoinCore routing tables following a
+ * structural network model, see {@link simblock.settings.NetworkConfiguration#TOPOLOGY_GENERATOR}.
+ * The links are written straight into the {@link Topology}, a link opened by a node is an
+ * outbound link of that node and an inbound link of its peer. Both generators run in time
+ * proportional to the number of links.
+ */
+public class TopologyGenerator {
+
+  /**
+   * Links the provided nodes with the configured generator. The number of connections of every
+   * node is set to its number of outbound links, at least the number of links a node opens, which
+   * later re-dials keep. The first nodes of a Barabasi-Albert network open fewer links.
+   *
+   * @param nodes the nodes, all using a BitcoinCore routing table or a subclass of it
+   * @param seed  the seed of the random source of the generator
+   */
+  public static void generate(List<Node> nodes, long seed) {
+    for (Node node : nodes) {
+      if (!(node.getRoutingTable() instanceof BitcoinCoreTable)) {
+        throw new IllegalStateException(
+            TOPOLOGY_GENERATOR + " topologies require BitcoinCore routing tables");
+      }
+    }
+    Random rnd = new Random(seed);
+    int linksPerNode;
+    switch (TOPOLOGY_GENERATOR) {
+      case "BARABASI_ALBERT":
+        linksPerNode = barabasiAlbert(nodes, BA_LINKS_PER_NODE, rnd);
+        break;
+      case "WATTS_STROGATZ":
+        linksPerNode = wattsStrogatz(nodes, WS_RING_NEIGHBORS, WS_REWIRING_PROBABILITY, rnd);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown topology generator " + TOPOLOGY_GENERATOR);
+    }
+    for (Node node : nodes) {
+      node.setNumConnection(Math.max(Topology.countEdges(node.getNodeID(), FLAG_OUTBOUND),
+                                     Math.max(linksPerNode, 1)));
+      node.getRoutingTable().restoreTable();
+    }
+  }
+
+  /**
+   * Grows a Barabasi-Albert network. The first nodes form a clique, every further node opens
+   * links to distinct nodes drawn with probability proportional to their degree. Every link
+   * appends both of its ends to an array of edge endpoints, so drawing a uniform entry of that
+   * array is a degree-proportional draw in constant time.
+   *
+   * @param nodes        the nodes, in order of arrival
+   * @param linksPerNode the number of links opened by every new node
+   * @param rnd          the random source
+   * @return the number of links opened by every node after the clique
+   */
+  static int barabasiAlbert(List<Node> nodes, int linksPerNode, Random rnd) {
+    int size = nodes.size();
+    int m = Math.max(1, Math.min(linksPerNode, size - 1));
+    int[] endpoints = new int[2 * m * Math.max(size, m + 1)];
+    int numEndpoints = 0;
+
+    int cliqueSize = Math.min(m + 1, size);
+    for (int i = 0; i < cliqueSize; i++) {
+      for (int j = 0; j < i; j++) {
+        link(nodes, i, j);
+        endpoints[numEndpoints++] = i;
+        endpoints[numEndpoints++] = j;
+      }
+    }
+
+    int[] chosen = new int[m];
+    for (int i = cliqueSize; i < size; i++) {
+      int count = 0;
+      while (count < m) {
+        int target = endpoints[rnd.nextInt(numEndpoints)];
+        if (!contains(chosen, count, target)) {
+          chosen[count++] = target;
+        }
+      }
+      for (int c = 0; c < m; c++) {
+        link(nodes, i, chosen[c]);
+        endpoints[numEndpoints++] = i;
+        endpoints[numEndpoints++] = chosen[c];
+      }
+    }
+    return m;
+  }
+
+  /**
+   * Generates a Watts-Strogatz network. Every node opens links to the next half of its ring
+   * lattice neighbors, each link is rewired with the provided probability to a uniformly drawn
+   * node that is neither the node itself nor already linked to it.
+   *
+   * @param nodes         the nodes, in ring order
+   * @param ringNeighbors the number of ring lattice neighbors of every node
+   * @param rewiring      the rewiring probability
+   * @param rnd           the random source
+   * @return the number of links opened by every node
+   */
+  static int wattsStrogatz(List<Node> nodes, int ringNeighbors, double rewiring, Random rnd) {
+    int size = nodes.size();
+    int half = Math.min(ringNeighbors / 2, (size - 1) / 2);
+    for (int u = 0; u < size; u++) {
+      int uID = nodes.get(u).getNodeID();
+      for (int j = 1; j <= half; j++) {
+        int v = (u + j) % size;
+        if (rnd.nextDouble() < rewiring && Topology.getDegree(uID) < size - 1) {
+          do {
+            v = rnd.nextInt(size);
+          } while (v == u || Topology.indexOf(uID, nodes.get(v).getNodeID()) >= 0);
+        } else if (Topology.indexOf(uID, nodes.get(v).getNodeID()) >= 0) {
+          // An earlier rewired link already joins both nodes
+          continue;
+        }
+        link(nodes, u, v);
+      }
+    }
+    return half;
+  }
+
+  /**
+   * Adds a link opened by a node, outbound from it and inbound to its peer.
+   *
+   * @param nodes the nodes
+   * @param from  the index of the node opening the link
+   * @param to    the index of the peer
+   */
+  private static void link(List<Node> nodes, int from, int to) {
+    int fromID = nodes.get(from).getNodeID();
+    int toID = nodes.get(to).getNodeID();
+    Topology.addEdge(fromID, toID, FLAG_OUTBOUND);
+    Topology.addEdge(toID, fromID, 0);
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for (int i = 0; i < count; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator;
+
+import static simblock.settings.NetworkConfiguration.BA_LINKS_PER_NODE;
+import static simblock.settings.NetworkConfiguration.DEGREE_DISTRIBUTION;
+import static simblock.settings.NetworkConfiguration.LATENCY;
+import static simblock.settings.NetworkConfiguration.LATENCY_MODEL;
+import static simblock.settings.NetworkConfiguration.REGION_DISTRIBUTION;
+import static simblock.settings.NetworkConfiguration.TOPOLOGY_GENERATOR;
+import static simblock.settings.NetworkConfiguration.WS_REWIRING_PROBABILITY;
+import static simblock.settings.NetworkConfiguration.WS_RING_NEIGHBORS;
+import static simblock.settings.SimulationConfiguration.AVERAGE_MINING_POWER;
+import static simblock.settings.SimulationConfiguration.CBR_USAGE_RATE;
+import static simblock.settings.SimulationConfiguration.CHURN_NODE_RATE;
+import static simblock.settings.SimulationConfiguration.PARTICIPATION_LINKS;
+import static simblock.settings.SimulationConfiguration.RANDOM_LINK_FRACTION;
+import static simblock.settings.SimulationConfiguration.RELAY_LINKS;
+import static simblock.settings.SimulationConfiguration.RELAY_NODE_RATE;
+import static simblock.settings.SimulationConfiguration.STDEV_OF_MINING_POWER;
+import static simblock.settings.SimulationConfiguration.TABLE;
+import static simblock.simulator.Main.CONF_FILE_URI;
+import static simblock.simulator.Main.createNode;
+import static simblock.simulator.Main.printAddNode;
+import static simblock.simulator.Simulator.addNode;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import simblock.node.Node;
+import simblock.node.routing.BitcoinCoreTable;
+import simblock.node.routing.KademliaTable;
+import simblock.node.routing.LatencyAwareTable;
+
+/**
+ * The type Topology snapshot caches the generated network in a binary file: the attributes of
+ * every node, the rows of the {@link Topology}, the keys of a Kademlia network, the network
+ * coordinates and the state of the simulation random source after the network was generated. A
+ * run that loads the snapshot continues from the same network and random state as the run that
+ * wrote it.
+ *
+ * <p>The file name is a hash of the network configuration and of the initial state of the
+ * random source, so a change of either generates and writes a new snapshot. Snapshots are kept
+ * in the <em>cache</em> directory next to the configuration directory and are memory-mapped
+ * when loaded.
+ */
+public class TopologySnapshot {
+
+  /**
+   * The file format version, part of the hash. Increase it whenever the way the network is
+   * generated changes, so that older snapshots are not loaded.
+   */
+  private static final int VERSION = 2;
+
+  /**
+   * The magic number at the start of every snapshot.
+   */
+  private static final long MAGIC = 0x53424c4b544f504fL;
+
+  /**
+   * Node flag of a node using compact block relay.
+   */
+  private static final byte NODE_CBR = 1;
+
+  /**
+   * Node flag of a churn node.
+   */
+  private static final byte NODE_CHURN = 2;
+
+  /**
+   * The hash of the network configuration, computed by {@link #load(int)}.
+   */
+  private static String hash;
+
+  /**
+   * Loads the snapshot of the current network configuration, if there is one, adding its nodes
+   * to the simulation and its links to the topology. Must be called before the random source is
+   * used.
+   *
+   * @param numNodes the number of nodes
+   * @return true if the snapshot was loaded
+   */
+  public static boolean load(int numNodes) {
+    hash = hashConfiguration(numNodes);
+    File file = getFile();
+    if (!file.exists()) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getLong() != MAGIC || buffer.getInt() != numNodes) {
+        return false;
+      }
+      int[] regions = readInts(buffer, numNodes);
+      int[] numConnections = readInts(buffer, numNodes);
+      long[] miningPowers = new long[numNodes];
+      buffer.asLongBuffer().get(miningPowers);
+      buffer.position(buffer.position() + 8 * numNodes);
+      byte[] nodeFlags = new byte[numNodes];
+      buffer.get(nodeFlags);
+
+      int[] rowDegrees = readInts(buffer, buffer.getInt());
+      int numEdges = buffer.getInt();
+      int[] rowTargets = readInts(buffer, numEdges);
+      int[] rowFlags = readInts(buffer, numEdges);
+
+      long[] keys = new long[buffer.getInt()];
+      buffer.asLongBuffer().get(keys);
+      buffer.position(buffer.position() + 8 * keys.length);
+      float[] coordinates = new float[buffer.getInt()];
+      buffer.asFloatBuffer().get(coordinates);
+      buffer.position(buffer.position() + 4 * coordinates.length);
+      byte[] randomState = new byte[buffer.getInt()];
+      buffer.get(randomState);
+
+      for (int index = 0; index < numNodes; index++) {
+        Node node = createNode(index + 1, numConnections[index], regions[index],
+                               miningPowers[index], (nodeFlags[index] & NODE_CBR) != 0,
+                               (nodeFlags[index] & NODE_CHURN) != 0);
+        addNode(node);
+        if (keys.length > 0) {
+          KademliaTable.setKey(node.getNodeID(), keys[index]);
+        }
+        if (coordinates.length > 0) {
+          NetworkCoordinates.setCoordinates(node.getNodeID(), coordinates[3 * index],
+                                            coordinates[3 * index + 1],
+                                            coordinates[3 * index + 2]);
+        }
+        printAddNode(node);
+      }
+      Topology.load(rowDegrees, rowTargets, rowFlags);
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(randomState))) {
+        Main.random = (Random) in.readObject();
+      }
+      for (Node node : getSimulatedNodes()) {
+        node.getRoutingTable().restoreTable();
+      }
+      return true;
+    } catch (IOException | ClassNotFoundException ex) {
+      ex.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Writes the snapshot of the generated network. Must be called after {@link #load(int)}
+   * failed and the network was generated.
+   *
+   * @param numNodes the number of nodes
+   */
+  public static void save(int numNodes) {
+    List<Node> nodes = getSimulatedNodes();
+    File file = getFile();
+    file.getParentFile().mkdirs();
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeLong(MAGIC);
+      out.writeInt(numNodes);
+      for (Node node : nodes) {
+        out.writeInt(node.getRegion());
+      }
+      for (Node node : nodes) {
+        out.writeInt(node.getNumConnection());
+      }
+      for (Node node : nodes) {
+        out.writeLong(node.getMiningPower());
+      }
+      for (Node node : nodes) {
+        out.writeByte((node.getUseCBR() ? NODE_CBR : 0) | (node.isChurnNode() ? NODE_CHURN : 0));
+      }
+
+      // Rows of node ids 0 to the largest node id
+      int numRows = numNodes + 1;
+      int numEdges = 0;
+      out.writeInt(numRows);
+      for (int nodeID = 0; nodeID < numRows; nodeID++) {
+        out.writeInt(Topology.getDegree(nodeID));
+        numEdges += Topology.getDegree(nodeID);
+      }
+      out.writeInt(numEdges);
+      int[] targets = Topology.getTargets();
+      int[] flags = Topology.getFlags();
+      for (int nodeID = 0; nodeID < numRows; nodeID++) {
+        int offset = Topology.getOffset(nodeID);
+        for (int i = offset; i < offset + Topology.getDegree(nodeID); i++) {
+          out.writeInt(targets[i]);
+        }
+      }
+      for (int nodeID = 0; nodeID < numRows; nodeID++) {
+        int offset = Topology.getOffset(nodeID);
+        for (int i = offset; i < offset + Topology.getDegree(nodeID); i++) {
+          out.writeInt(flags[i]);
+        }
+      }
+
+      boolean kademlia = TABLE.equals(KademliaTable.class.getName());
+      out.writeInt(kademlia ? numNodes : 0);
+      if (kademlia) {
+        for (Node node : nodes) {
+          out.writeLong(KademliaTable.getKey(node.getNodeID()));
+        }
+      }
+      boolean coordinates = LATENCY_MODEL.equals("COORDINATE");
+      out.writeInt(coordinates ? 3 * numNodes : 0);
+      if (coordinates) {
+        for (Node node : nodes) {
+          for (float value : NetworkCoordinates.getCoordinates(node.getNodeID())) {
+            out.writeFloat(value);
+          }
+        }
+      }
+      byte[] randomState = serialize(Main.random);
+      out.writeInt(randomState.length);
+      out.write(randomState);
+    } catch (IOException ex) {
+      ex.printStackTrace();
+      // Do not leave a truncated snapshot behind
+      file.delete();
+    }
+  }
+
+  /**
+   * Gets the snapshot file of the current network configuration.
+   *
+   * @return the file
+   */
+  private static File getFile() {
+    return new File(CONF_FILE_URI.resolve("../cache/topology-" + hash + ".bin"));
+  }
+
+  /**
+   * Hashes every input of the network generation: the network configuration, the constants of
+   * the routing tables and of the network coordinates, and the current state of the random
+   * source.
+   *
+   * @param numNodes the number of nodes
+   * @return the hash in hexadecimal
+   */
+  private static String hashConfiguration(int numNodes) {
+    String configuration = VERSION + ";" + numNodes + ";" + TABLE + ";"
+        + Arrays.toString(REGION_DISTRIBUTION) + ";" + Arrays.toString(DEGREE_DISTRIBUTION) + ";"
+        + CBR_USAGE_RATE + ";" + CHURN_NODE_RATE + ";" + AVERAGE_MINING_POWER + ";"
+        + STDEV_OF_MINING_POWER + ";" + LATENCY_MODEL + ";" + Arrays.deepToString(LATENCY) + ";"
+        + KademliaTable.BUCKET_SIZE + ";" + RANDOM_LINK_FRACTION + ";" + TOPOLOGY_GENERATOR + ";"
+        + BA_LINKS_PER_NODE + ";" + WS_RING_NEIGHBORS + ";" + WS_REWIRING_PROBABILITY + ";"
+        + RELAY_NODE_RATE + ";" + RELAY_LINKS + ";" + PARTICIPATION_LINKS + ";"
+        + NetworkCoordinates.HEIGHT_SHARE + ";" + NetworkCoordinates.SPREAD_SHARE + ";"
+        + NetworkCoordinates.FIT_ROUNDS + ";" + NetworkCoordinates.MIN_LATENCY + ";"
+        + KademliaTable.NUM_BUCKETS + ";" + KademliaTable.LOOKUP_PARALLELISM + ";"
+        + BitcoinCoreTable.CANDIDATE_OVERSAMPLING + ";" + BitcoinCoreTable.EXTRA_CANDIDATES + ";"
+        + LatencyAwareTable.CANDIDATES_PER_CONNECTION;
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+      digest.update(serialize(Main.random));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : Arrays.copyOf(digest.digest(), 8)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException | IOException ex) {
+      // Should never happen, SHA-256 is always available and the stream is in memory
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Serializes the state of a random source.
+   *
+   * @param rnd the random source
+   * @return the serialized state
+   * @throws IOException never, the stream is in memory
+   */
+  private static byte[] serialize(Random rnd) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(rnd);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Reads ints from a buffer, advancing its position.
+   *
+   * @param buffer the buffer
+   * @param count  the number of ints
+   * @return the ints
+   */
+  private static int[] readInts(ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + 4 * count);
+    return values;
+  }
+}
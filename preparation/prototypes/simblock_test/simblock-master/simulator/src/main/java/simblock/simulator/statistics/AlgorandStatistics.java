@@ -1,6 +1,5 @@
 package simblock.simulator.statistics;
 
-import simblock.settings.SimulationConfiguration;
 import simblock.task.Task;
 import simblock.task.algorand.AlgorandMsgTask;
 
@@ -8,6 +7,7 @@ import java.lang.reflect.Array;
 import java.util.ArrayList;
 
 import static simblock.simulator.Main.OUT_JSON_FILE;
+import static simblock.simulator.Simulator.getSimulatedNodes;
 import static simblock.simulator.Timer.getCurrentTime;
 
 public final class AlgorandStatistics {
@@ -28,7 +28,7 @@ public final class AlgorandStatistics {
     }
 
     private void initData() {
-        for(int i = 0; i < SimulationConfiguration.NUM_OF_NODES; i++) {
+        for(int i = 0; i < getSimulatedNodes().size(); i++) {
             nodeNumBlocks.add(0);
             lastConsensusTime.add(0L);
             nodeTimeBetweenBlocks.add(new ArrayList<>());
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.statistics;
+
+import static simblock.simulator.Main.OUT_JSON_FILE;
+
+import java.util.Arrays;
+
+/**
+ * The type Reorg statistics counts the chain reorganizations of all nodes by depth, the number
+ * of blocks of its current chain a node abandons when it switches to a competing chain.
+ */
+public class ReorgStatistics {
+
+  /**
+   * The number of reorganizations, indexed by depth.
+   */
+  private static long[] depthCounts = new long[8];
+
+  /**
+   * The number of reorganizations and the sum and maximum of their depths.
+   */
+  private static long reorgs = 0;
+  private static long totalDepth = 0;
+  private static int maxDepth = 0;
+
+  /**
+   * Records a reorganization.
+   *
+   * @param depth the number of abandoned blocks, reorganizations of depth 0 are ignored
+   */
+  public static void record(int depth) {
+    if (depth <= 0) {
+      return;
+    }
+    if (depth >= depthCounts.length) {
+      depthCounts = Arrays.copyOf(depthCounts, Math.max(depth + 1, 2 * depthCounts.length));
+    }
+    depthCounts[depth]++;
+    reorgs++;
+    totalDepth += depth;
+    maxDepth = Math.max(maxDepth, depth);
+  }
+
+  /**
+   * Prints the number of reorganizations, their average and maximum depth and the number of
+   * reorganizations of every depth.
+   */
+  public static void printStatistics() {
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"reorg-statistics\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"reorgs\":" + reorgs + ",");
+    OUT_JSON_FILE.print("\"average-depth\":" + (reorgs > 0 ? (double) totalDepth / reorgs : 0)
+        + ",");
+    OUT_JSON_FILE.print("\"max-depth\":" + maxDepth + ",");
+    OUT_JSON_FILE.print("\"depth-counts\":[");
+    for (int depth = 1; depth <= maxDepth; depth++) {
+      OUT_JSON_FILE.print((depth > 1 ? "," : "") + depthCounts[depth]);
+    }
+    OUT_JSON_FILE.print("]");
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+  }
+}
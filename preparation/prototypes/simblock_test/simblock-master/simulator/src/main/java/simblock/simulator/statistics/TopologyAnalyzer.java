@@ -0,0 +1,377 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.simulator.statistics;
+
+import static simblock.settings.NetworkConfiguration.REGION_LIST;
+import static simblock.simulator.Network.getMeanLatency;
+import static simblock.simulator.Simulator.getSimulatedNodes;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import simblock.node.Node;
+import simblock.simulator.Topology;
+
+/**
+ * The type Topology analyzer computes bounds on block propagation from the links of the routing
+ * tables: the hop diameter and path lengths, the latency of the shortest paths from each region
+ * and their stretch over the direct latency, and the clustering coefficient. Links are followed
+ * in the direction messages are sent, from a node to the nodes in its row.
+ *
+ * <p>Hop distances are computed by bit-parallel breadth-first searches, every search runs 64
+ * sources at once with one long of frontier bits per node. Large graphs are analyzed from an
+ * evenly spaced sample of sources, so the reported diameter is then a lower bound. All searches
+ * run in parallel on the common fork-join pool.
+ */
+public class TopologyAnalyzer {
+
+  /**
+   * The maximum number of breadth-first search sources, every node is a source in smaller
+   * graphs.
+   */
+  private static final int MAX_HOP_SOURCES = 1024;
+
+  /**
+   * The number of shortest-path latency sources of each region.
+   */
+  private static final int REGION_SOURCES = 4;
+
+  /**
+   * The analyzed nodes, adjacency indexes refer to this list.
+   */
+  private final List<Node> nodes;
+
+  /**
+   * Compact adjacency of the nodes, the neighbors of node <em>i</em> are the indexes between
+   * <em>offsets[i]</em> and <em>offsets[i + 1]</em>.
+   */
+  private final int[] offsets;
+  private final int[] targets;
+
+  /**
+   * Mean latency of every link, parallel to the targets.
+   */
+  private final double[] latencies;
+
+  /**
+   * Instantiates a new Topology analyzer over the current links of the simulated nodes.
+   */
+  public TopologyAnalyzer() {
+    this.nodes = new ArrayList<>(getSimulatedNodes());
+    int maxID = 0;
+    for (Node node : this.nodes) {
+      maxID = Math.max(maxID, node.getNodeID());
+    }
+    int[] indexes = new int[maxID + 1];
+    Arrays.fill(indexes, -1);
+    for (int i = 0; i < this.nodes.size(); i++) {
+      indexes[this.nodes.get(i).getNodeID()] = i;
+    }
+
+    this.offsets = new int[this.nodes.size() + 1];
+    for (int i = 0; i < this.nodes.size(); i++) {
+      this.offsets[i + 1] = this.offsets[i] + Topology.getDegree(this.nodes.get(i).getNodeID());
+    }
+    this.targets = new int[this.offsets[this.nodes.size()]];
+    this.latencies = new double[this.targets.length];
+    int[] rowTargets = Topology.getTargets();
+    int edge = 0;
+    for (int i = 0; i < this.nodes.size(); i++) {
+      int nodeID = this.nodes.get(i).getNodeID();
+      int offset = Topology.getOffset(nodeID);
+      for (int j = offset; j < offset + Topology.getDegree(nodeID); j++) {
+        int target = rowTargets[j] < indexes.length ? indexes[rowTargets[j]] : -1;
+        // Links to nodes that are not simulated are ignored
+        if (target >= 0) {
+          this.targets[edge] = target;
+          this.latencies[edge] = getMeanLatency(this.nodes.get(i), this.nodes.get(target));
+          edge++;
+        }
+      }
+      this.offsets[i + 1] = edge;
+    }
+  }
+
+  /**
+   * Analyzes the topology and writes the report as JSON.
+   *
+   * @param file the report file
+   */
+  public void writeReport(File file) {
+    int n = this.nodes.size();
+    int[] sources = n <= MAX_HOP_SOURCES ? IntStream.range(0, n).toArray() : IntStream.range(
+        0, MAX_HOP_SOURCES).map(i -> (int) ((long) i * n / MAX_HOP_SOURCES)).toArray();
+    long[] hops = this.hopDistribution(sources);
+    long reachedPairs = 0;
+    long hopSum = 0;
+    int diameter = 0;
+    for (int level = 1; level < hops.length; level++) {
+      reachedPairs += hops[level];
+      hopSum += level * hops[level];
+      if (hops[level] > 0) {
+        diameter = level;
+      }
+    }
+
+    try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file, false)))) {
+      pw.print("{");
+      pw.print("\"nodes\":" + n + ",");
+      pw.print("\"links\":" + this.targets.length + ",");
+      pw.print("\"hop-sources\":" + sources.length + ",");
+      pw.print("\"hop-diameter\":" + diameter + ",");
+      pw.print("\"hop-diameter-exact\":" + (sources.length == n) + ",");
+      pw.print("\"average-hops\":" + (reachedPairs == 0 ? 0 : (double) hopSum / reachedPairs) + ",");
+      pw.print("\"unreachable-pairs\":" + ((long) sources.length * (n - 1) - reachedPairs) + ",");
+      pw.print("\"hop-distribution\":" + Arrays.toString(Arrays.copyOfRange(hops, 1, diameter + 1))
+                   .replace(" ", "") + ",");
+      pw.print("\"clustering\":" + this.clustering() + ",");
+      pw.print("\"regions\":[");
+      for (int region = 0; region < REGION_LIST.size(); region++) {
+        double[] latency = this.regionLatency(region);
+        pw.print(region == 0 ? "" : ",");
+        pw.print("{");
+        pw.print("\"region\":\"" + REGION_LIST.get(region) + "\",");
+        pw.print("\"sources\":" + (int) latency[0] + ",");
+        pw.print("\"average-latency\":" + latency[1] + ",");
+        pw.print("\"max-latency\":" + latency[2] + ",");
+        pw.print("\"latency-stretch\":" + latency[3]);
+        pw.print("}");
+      }
+      pw.print("]");
+      pw.println("}");
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+  }
+
+  /**
+   * Counts the nodes reached at every hop distance from the provided sources, summed over all
+   * sources. Sources are searched in parallel batches of 64.
+   *
+   * @param sources the source indexes
+   * @return the number of reached nodes by hop distance, index 0 is unused
+   */
+  private long[] hopDistribution(int[] sources) {
+    int batches = (sources.length + 63) / 64;
+    return IntStream.range(0, batches).parallel().mapToObj(batch -> this.bitParallelSearch(
+        Arrays.copyOfRange(sources, 64 * batch, Math.min(sources.length, 64 * batch + 64))))
+        .reduce(new long[1], TopologyAnalyzer::addHistograms);
+  }
+
+  /**
+   * Runs a breadth-first search from up to 64 sources at once. Bit <em>j</em> of the frontier
+   * word of a node is set if the node was reached from source <em>j</em> in the last level.
+   *
+   * @param sources the source indexes, at most 64
+   * @return the number of reached nodes by hop distance
+   */
+  private long[] bitParallelSearch(int[] sources) {
+    int n = this.nodes.size();
+    long[] visited = new long[n];
+    long[] frontier = new long[n];
+    long[] next = new long[n];
+    for (int j = 0; j < sources.length; j++) {
+      visited[sources[j]] |= 1L << j;
+      frontier[sources[j]] |= 1L << j;
+    }
+    long[] histogram = new long[1];
+    boolean active = true;
+    for (int level = 1; active; level++) {
+      Arrays.fill(next, 0);
+      for (int u = 0; u < n; u++) {
+        long bits = frontier[u];
+        if (bits != 0) {
+          for (int e = this.offsets[u]; e < this.offsets[u + 1]; e++) {
+            next[this.targets[e]] |= bits;
+          }
+        }
+      }
+      active = false;
+      long reached = 0;
+      for (int v = 0; v < n; v++) {
+        long fresh = next[v] & ~visited[v];
+        visited[v] |= fresh;
+        frontier[v] = fresh;
+        if (fresh != 0) {
+          reached += Long.bitCount(fresh);
+          active = true;
+        }
+      }
+      if (active) {
+        histogram = Arrays.copyOf(histogram, level + 1);
+        histogram[level] = reached;
+      }
+    }
+    return histogram;
+  }
+
+  private static long[] addHistograms(long[] a, long[] b) {
+    long[] sum = Arrays.copyOf(a, Math.max(a.length, b.length));
+    for (int i = 0; i < b.length; i++) {
+      sum[i] += b[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Computes the average local clustering coefficient, the share of pairs of neighbors of a
+   * node that are linked themselves, over all nodes with at least two neighbors.
+   *
+   * @return the clustering coefficient
+   */
+  private double clustering() {
+    int n = this.nodes.size();
+    // Sorted copies of the rows allow neighbor lookups by binary search
+    int[] sorted = this.targets.clone();
+    for (int u = 0; u < n; u++) {
+      Arrays.sort(sorted, this.offsets[u], this.offsets[u + 1]);
+    }
+    double[] coefficients = IntStream.range(0, n).parallel().mapToDouble(u -> {
+      int degree = this.offsets[u + 1] - this.offsets[u];
+      if (degree < 2) {
+        return -1;
+      }
+      long links = 0;
+      for (int a = this.offsets[u]; a < this.offsets[u + 1]; a++) {
+        int v = sorted[a];
+        for (int b = this.offsets[u]; b < this.offsets[u + 1]; b++) {
+          int w = sorted[b];
+          if (v != w && Arrays.binarySearch(sorted, this.offsets[v], this.offsets[v + 1], w) >= 0) {
+            links++;
+          }
+        }
+      }
+      return (double) links / ((long) degree * (degree - 1));
+    }).filter(c -> c >= 0).toArray();
+    return coefficients.length == 0 ? 0 : Arrays.stream(coefficients).average().orElse(0);
+  }
+
+  /**
+   * Computes the shortest-path latencies from evenly spaced sources of a region to all reachable
+   * nodes, in parallel.
+   *
+   * @param region the region
+   * @return the number of sources, the average and the maximum shortest-path latency and the
+   *     average stretch of the shortest-path latency over the direct latency
+   */
+  private double[] regionLatency(int region) {
+    int[] members = IntStream.range(0, this.nodes.size()).filter(
+        i -> this.nodes.get(i).getRegion() == region).toArray();
+    int count = Math.min(REGION_SOURCES, members.length);
+    if (count == 0) {
+      return new double[4];
+    }
+    double[][] results = IntStream.range(0, count).parallel().mapToObj(
+        i -> this.shortestPaths(members[(int) ((long) i * members.length / count)])).toArray(
+        double[][]::new);
+    double[] summary = new double[4];
+    summary[0] = count;
+    for (double[] result : results) {
+      summary[1] += result[0] / count;
+      summary[2] = Math.max(summary[2], result[1]);
+      summary[3] += result[2] / count;
+    }
+    return summary;
+  }
+
+  /**
+   * Runs Dijkstra's algorithm from a source, weighting every link with its mean latency.
+   *
+   * @param source the source index
+   * @return the average and maximum latency to the reached nodes and the average stretch
+   */
+  private double[] shortestPaths(int source) {
+    int n = this.nodes.size();
+    double[] distance = new double[n];
+    Arrays.fill(distance, Double.POSITIVE_INFINITY);
+    distance[source] = 0;
+    // Binary heap of (distance, node) with lazy deletion of outdated entries
+    double[] heapKeys = new double[16];
+    int[] heapNodes = new int[16];
+    int size = 0;
+    heapKeys[0] = 0;
+    heapNodes[0] = source;
+    size++;
+    while (size > 0) {
+      double key = heapKeys[0];
+      int u = heapNodes[0];
+      size--;
+      // Sift the last entry down from the root
+      double lastKey = heapKeys[size];
+      int lastNode = heapNodes[size];
+      int hole = 0;
+      while (2 * hole + 1 < size) {
+        int child = 2 * hole + 1;
+        if (child + 1 < size && heapKeys[child + 1] < heapKeys[child]) {
+          child++;
+        }
+        if (heapKeys[child] >= lastKey) {
+          break;
+        }
+        heapKeys[hole] = heapKeys[child];
+        heapNodes[hole] = heapNodes[child];
+        hole = child;
+      }
+      heapKeys[hole] = lastKey;
+      heapNodes[hole] = lastNode;
+
+      if (key > distance[u]) {
+        continue;
+      }
+      for (int e = this.offsets[u]; e < this.offsets[u + 1]; e++) {
+        int v = this.targets[e];
+        double candidate = key + this.latencies[e];
+        if (candidate < distance[v]) {
+          distance[v] = candidate;
+          if (size == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, 2 * size);
+            heapNodes = Arrays.copyOf(heapNodes, 2 * size);
+          }
+          // Sift the new entry up
+          int position = size++;
+          while (position > 0 && heapKeys[(position - 1) / 2] > candidate) {
+            heapKeys[position] = heapKeys[(position - 1) / 2];
+            heapNodes[position] = heapNodes[(position - 1) / 2];
+            position = (position - 1) / 2;
+          }
+          heapKeys[position] = candidate;
+          heapNodes[position] = v;
+        }
+      }
+    }
+
+    double sum = 0;
+    double max = 0;
+    double stretch = 0;
+    int reached = 0;
+    for (int v = 0; v < n; v++) {
+      if (v != source && distance[v] != Double.POSITIVE_INFINITY) {
+        sum += distance[v];
+        max = Math.max(max, distance[v]);
+        stretch += distance[v] / getMeanLatency(this.nodes.get(source), this.nodes.get(v));
+        reached++;
+      }
+    }
+    return reached == 0 ? new double[3] : new double[] {sum / reached, max, stretch / reached};
+  }
+}
@@ -17,8 +17,11 @@
 package simblock.task;
 
 import static simblock.simulator.Network.getLatency;
+import static simblock.simulator.Network.getTransmissionDelay;
 
 import simblock.node.Node;
+import simblock.simulator.ChurnEngine;
+import simblock.simulator.FaultInjector;
 
 /**
  * The type Abstract message task.
@@ -33,6 +36,17 @@ public abstract class AbstractMessageTask implements Task {
    */
   private final Node to;
 
+  /**
+   * The session of the receiving entity when the message was created, see {@link ChurnEngine}.
+   */
+  private final int receiverSession;
+
+  /**
+   * The block streaming in at the sender that the message depends on, or null, see {@link
+   * BlockPrefixMessageTask}.
+   */
+  private BlockPrefixMessageTask stream = null;
+
   /**
    * Instantiates a new Abstract message task.
    *
@@ -42,6 +56,7 @@ public abstract class AbstractMessageTask implements Task {
   public AbstractMessageTask(Node from, Node to) {
     this.from = from;
     this.to = to;
+    this.receiverSession = ChurnEngine.isEnabled() ? ChurnEngine.getSession(to) : 0;
   }
 
   /**
@@ -63,21 +78,68 @@ public abstract class AbstractMessageTask implements Task {
   }
 
   /**
-   * Get the message delay with regards to respective regions.
+   * Makes the message depend on a block streaming in at the sender. The message is dropped if the
+   * stream is aborted before the message arrives.
+   *
+   * @param stream the stream, or null
+   */
+  public void setStream(BlockPrefixMessageTask stream) {
+    this.stream = stream;
+  }
+
+  /**
+   * Get the size of the message on the wire. Messages whose transmission delay is computed by
+   * the sender override {@link #getInterval()} instead.
+   *
+   * @return the message size in bytes
+   */
+  public long getSize() {
+    return 0;
+  }
+
+  /**
+   * Get the message delay with regards to respective regions and the message size.
    *
    * @return the message sending interval
    */
   public long getInterval() {
-    long latency = getLatency(this.from.getRegion(), this.to.getRegion());
+    long latency = getLatency(this.from, this.to);
     // Add 10 milliseconds here, why?
     //TODO
-    return latency + 10;
+    return latency + getTransmissionDelay(this.getSize(), this.from, this.to) + 10;
+  }
+
+  /**
+   * Checks if the message is dropped by an active fault, by the abort of the stream it depends on,
+   * or cancelled because its receiver left the network, cancelling it in all cases. Costs a few
+   * flag tests while no fault is active and churn is disabled.
+   *
+   * @return true if the message is dropped
+   */
+  protected boolean isDropped() {
+    if (this.stream != null && this.stream.isAborted()
+        || ChurnEngine.isEnabled() && ChurnEngine.isCancelled(this, this.receiverSession)
+        || FaultInjector.isActive() && FaultInjector.isDropped(this)) {
+      this.cancel();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Called when the message is dropped by a fault or cancelled because its receiver left the
+   * network, for instance to release the state kept for the expected answer.
+   */
+  protected void cancel() {
   }
 
   /**
    * Receive message at the <em>to</em> side.
    */
   public void run() {
+    if (this.isDropped()) {
+      return;
+    }
     this.to.receiveMessage(this);
   }
 
@@ -49,7 +49,7 @@ public class BlockMessageTask extends AbstractMessageTask {
   public BlockMessageTask(Node from, Node to, Block block, long delay) {
     super(from, to);
     this.block = block;
-    this.interval = getLatency(this.getFrom().getRegion(), this.getTo().getRegion()) + delay;
+    this.interval = getLatency(this.getFrom(), this.getTo()) + delay;
   }
 
 
@@ -66,6 +66,10 @@ public class BlockMessageTask extends AbstractMessageTask {
 
     this.getFrom().sendNextBlockMessage();
 
+    if (this.isDropped()) {
+      return;
+    }
+
     OUT_JSON_FILE.print("{");
     OUT_JSON_FILE.print("\"kind\":\"flow-message\",");
     OUT_JSON_FILE.print("\"content\":{");
@@ -80,7 +84,7 @@ public class BlockMessageTask extends AbstractMessageTask {
     OUT_JSON_FILE.print("},");
     OUT_JSON_FILE.flush();
 
-    super.run();
+    this.getTo().receiveMessage(this);
   }
 
   /**
@@ -91,4 +95,14 @@ public class BlockMessageTask extends AbstractMessageTask {
   public Block getBlock() {
     return this.block;
   }
+
+  /**
+   * The block will not arrive, the receiving node may download it from another peer and stops
+   * forwarding it if it was streaming in.
+   */
+  @Override
+  protected void cancel() {
+    this.getTo().abortDownload(this.block, this.getFrom());
+    this.getTo().abortStream(this.block, this.getFrom());
+  }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import simblock.block.Block;
+import simblock.node.Node;
+
+/**
+ * The type Block prefix message task marks the arrival of the first {@link
+ * simblock.settings.SimulationConfiguration#CUT_THROUGH_PREFIX_SIZE} bytes of a block being
+ * transferred, after which the receiver may forward the block while the rest of it streams in.
+ * It is the streaming state of the transfer: the arrival of the remaining bytes is not simulated
+ * chunk by chunk, only the time the last byte arrives is kept. The stream is aborted if the block
+ * message carrying the whole block is dropped.
+ */
+public class BlockPrefixMessageTask extends AbstractMessageTask {
+  /**
+   * The {@link Block} that is streamed.
+   */
+  private final Block block;
+
+  /**
+   * The prefix sending delay in milliseconds.
+   */
+  private final long interval;
+
+  /**
+   * The time the last byte of the block arrives.
+   */
+  private final long streamEnd;
+
+  /**
+   * Whether the block stopped streaming in.
+   */
+  private boolean aborted = false;
+
+  /**
+   * Instantiates a new Block prefix message task. The prefix travels with the block, the interval
+   * is the latency of the block message plus the transmission of the prefix.
+   *
+   * @param from      the sender
+   * @param to        the receiver
+   * @param block     the block instance
+   * @param interval  the delay until the prefix has arrived
+   * @param streamEnd the time the whole block has arrived
+   */
+  public BlockPrefixMessageTask(Node from, Node to, Block block, long interval, long streamEnd) {
+    super(from, to);
+    this.block = block;
+    this.interval = interval;
+    this.streamEnd = streamEnd;
+  }
+
+  @Override
+  public long getInterval() {
+    return this.interval;
+  }
+
+  /**
+   * Gets block.
+   *
+   * @return the block
+   */
+  public Block getBlock() {
+    return this.block;
+  }
+
+  /**
+   * Gets the time the last byte of the block arrives.
+   *
+   * @return the time
+   */
+  public long getStreamEnd() {
+    return this.streamEnd;
+  }
+
+  /**
+   * Aborts the stream, the rest of the block will not arrive.
+   */
+  public void abort() {
+    this.aborted = true;
+  }
+
+  /**
+   * Checks if the stream is aborted.
+   *
+   * @return true if the rest of the block will not arrive
+   */
+  public boolean isAborted() {
+    return this.aborted;
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import static simblock.simulator.Timer.putTask;
+
+import simblock.node.routing.KademliaTable;
+
+/**
+ * The type Bucket refresh task periodically refreshes the buckets of a {@link KademliaTable}.
+ */
+public class BucketRefreshTask implements Task {
+  /**
+   * The routing table to refresh.
+   */
+  private final KademliaTable table;
+
+  /**
+   * The delay before the refresh in milliseconds.
+   */
+  private final long interval;
+
+  /**
+   * Instantiates a new Bucket refresh task.
+   *
+   * @param table    the routing table
+   * @param interval the delay before the refresh
+   */
+  public BucketRefreshTask(KademliaTable table, long interval) {
+    this.table = table;
+    this.interval = interval;
+  }
+
+  @Override
+  public long getInterval() {
+    return this.interval;
+  }
+
+  /**
+   * Refreshes the buckets and schedules the next refresh.
+   */
+  @Override
+  public void run() {
+    this.table.refreshBuckets();
+    putTask(new BucketRefreshTask(this.table, KademliaTable.REFRESH_INTERVAL));
+  }
+}
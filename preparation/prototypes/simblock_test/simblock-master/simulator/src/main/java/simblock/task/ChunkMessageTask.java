@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import static simblock.simulator.Main.OUT_JSON_FILE;
+import static simblock.simulator.Network.getLatency;
+import static simblock.simulator.Timer.getCurrentTime;
+import static simblock.simulator.Timer.putTask;
+
+import simblock.block.Block;
+import simblock.node.Node;
+
+/**
+ * The type Chunk message task sends a chunk of a block downloaded from several peers, see {@link
+ * simblock.settings.SimulationConfiguration#MULTI_SOURCE_DOWNLOAD}. Unlike a block message, a chunk
+ * frees the upload slot of its sender as soon as its last byte is sent, one link latency before it
+ * arrives, so that the chunks a peer serves back to back keep its link busy. The task runs twice,
+ * once when the chunk is sent and once when it arrives.
+ */
+public class ChunkMessageTask extends AbstractMessageTask {
+  /**
+   * The {@link Block} of the chunk.
+   */
+  private final Block block;
+
+  /**
+   * The index of the chunk in the block.
+   */
+  private final int chunk;
+
+  /**
+   * The chunk message sending delay and the link latency in milliseconds.
+   */
+  private final long delay;
+  private final long latency;
+
+  /**
+   * Whether the last byte of the chunk was sent.
+   */
+  private boolean sent = false;
+
+  /**
+   * Instantiates a new Chunk message task.
+   *
+   * @param from  the sender
+   * @param to    the receiver
+   * @param block the block instance
+   * @param chunk the index of the chunk
+   * @param delay the delay of the message transmission
+   */
+  public ChunkMessageTask(Node from, Node to, Block block, int chunk, long delay) {
+    super(from, to);
+    this.block = block;
+    this.chunk = chunk;
+    this.delay = delay;
+    this.latency = getLatency(this.getFrom(), this.getTo());
+  }
+
+  @Override
+  public long getInterval() {
+    return this.sent ? this.latency : this.delay;
+  }
+
+  /**
+   * Frees the upload slot of the sender once the chunk is sent, then delivers the chunk to the
+   * receiver and logs the event.
+   */
+  @Override
+  public void run() {
+    if (!this.sent) {
+      this.sent = true;
+      this.getFrom().sendNextBlockMessage();
+      putTask(this);
+      return;
+    }
+
+    if (this.isDropped()) {
+      return;
+    }
+
+    OUT_JSON_FILE.print("{");
+    OUT_JSON_FILE.print("\"kind\":\"flow-message\",");
+    OUT_JSON_FILE.print("\"content\":{");
+    OUT_JSON_FILE.print("\"transmission-timestamp\":" + (getCurrentTime() - this.delay - this.latency) + ",");
+    OUT_JSON_FILE.print("\"reception-timestamp\":" + getCurrentTime() + ",");
+    OUT_JSON_FILE.print("\"begin-node-id\":" + getFrom().getNodeID() + ",");
+    OUT_JSON_FILE.print("\"end-node-id\":" + getTo().getNodeID() + ",");
+    OUT_JSON_FILE.print("\"msg-type\":\"" + "Chunk\",");
+    OUT_JSON_FILE.print("\"msg-creator\":\"" + getFrom().getNodeID() + "\",");
+    OUT_JSON_FILE.print("\"block-id\":" + block.getId());
+    OUT_JSON_FILE.print("}");
+    OUT_JSON_FILE.print("},");
+    OUT_JSON_FILE.flush();
+
+    this.getTo().receiveMessage(this);
+  }
+
+  /**
+   * Gets block.
+   *
+   * @return the block
+   */
+  public Block getBlock() {
+    return this.block;
+  }
+
+  /**
+   * Gets the index of the chunk.
+   *
+   * @return the chunk index
+   */
+  public int getChunk() {
+    return this.chunk;
+  }
+
+  /**
+   * The chunk will not arrive, the receiving node requests it from another peer.
+   */
+  @Override
+  protected void cancel() {
+    this.getTo().abortChunk(this.block, this.getFrom(), this.chunk);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import simblock.node.Node;
+import simblock.simulator.ChurnEngine;
+
+/**
+ * The type Churn task makes a node leave or rejoin the network at the end of its current session
+ * or offline period.
+ */
+public class ChurnTask implements Task {
+  /**
+   * The node.
+   */
+  private final Node node;
+
+  /**
+   * Whether the node rejoins or leaves.
+   */
+  private final boolean rejoin;
+
+  /**
+   * The length of the current session or offline period.
+   */
+  private final long interval;
+
+  /**
+   * Instantiates a new Churn task.
+   *
+   * @param node     the node
+   * @param rejoin   true if the node rejoins, false if it leaves
+   * @param interval the length of the current session or offline period
+   */
+  public ChurnTask(Node node, boolean rejoin, long interval) {
+    this.node = node;
+    this.rejoin = rejoin;
+    this.interval = interval;
+  }
+
+  @Override
+  public long getInterval() {
+    return this.interval;
+  }
+
+  @Override
+  public void run() {
+    if (this.rejoin) {
+      ChurnEngine.rejoin(this.node);
+    } else {
+      ChurnEngine.leave(this.node);
+    }
+  }
+}
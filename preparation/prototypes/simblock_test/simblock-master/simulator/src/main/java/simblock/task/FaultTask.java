@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import simblock.simulator.Fault;
+import simblock.simulator.FaultInjector;
+
+/**
+ * The type Fault task activates or deactivates a fault of the fault schedule. Fault tasks are
+ * scheduled at absolute times.
+ */
+public class FaultTask implements Task {
+  /**
+   * The fault.
+   */
+  private final Fault fault;
+
+  /**
+   * Whether the fault is activated or deactivated.
+   */
+  private final boolean activate;
+
+  /**
+   * Instantiates a new Fault task.
+   *
+   * @param fault    the fault
+   * @param activate true to activate the fault, false to deactivate it
+   */
+  public FaultTask(Fault fault, boolean activate) {
+    this.fault = fault;
+    this.activate = activate;
+  }
+
+  @Override
+  public long getInterval() {
+    return 0;
+  }
+
+  @Override
+  public void run() {
+    FaultInjector.setFaultActive(this.fault, this.activate);
+  }
+}
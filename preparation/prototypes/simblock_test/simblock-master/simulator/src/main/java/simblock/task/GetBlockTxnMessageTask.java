@@ -16,6 +16,8 @@
 
 package simblock.task;
 
+import static simblock.settings.SimulationConfiguration.GETBLOCKTXN_MESSAGE_SIZE;
+
 import simblock.block.Block;
 import simblock.node.Node;
 
@@ -29,9 +31,24 @@ public class GetBlockTxnMessageTask extends AbstractMessageTask {
      */
 	private Block block;
 
-	public GetBlockTxnMessageTask(Node from, Node to, Block block) {
+	/**
+	 * The size of the transactions missing from the compact block.
+	 */
+	private final long missingSize;
+
+	/**
+	 * Instantiates a new GetBlockTxn message task.
+	 *
+	 * @param from        the requesting node
+	 * @param to          the node that sent the compact block
+	 * @param block       the block
+	 * @param missingSize the size of the missing transactions, see {@link
+	 *                    simblock.settings.SimulationConfiguration#MEMPOOL_RECONSTRUCTION}
+	 */
+	public GetBlockTxnMessageTask(Node from, Node to, Block block, long missingSize) {
 		super(from, to);
 		this.block = block;
+		this.missingSize = missingSize;
 	}
     
     /**
@@ -42,4 +59,27 @@ public class GetBlockTxnMessageTask extends AbstractMessageTask {
 	public Block getBlock(){
 		return this.block;
 	}	
+
+	/**
+	 * Gets the size of the missing transactions.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getMissingSize() {
+		return this.missingSize;
+	}
+
+	@Override
+	public long getSize() {
+		return GETBLOCKTXN_MESSAGE_SIZE;
+	}
+
+	/**
+	 * The missing transactions will not arrive, the requesting node may download the block from
+	 * another peer.
+	 */
+	@Override
+	protected void cancel() {
+		this.getFrom().abortDownload(this.block, this.getTo());
+	}
 }
\ No newline at end of file
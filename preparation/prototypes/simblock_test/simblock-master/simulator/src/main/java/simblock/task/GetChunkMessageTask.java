@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import static simblock.settings.SimulationConfiguration.GETDATA_MESSAGE_SIZE;
+
+import simblock.block.Block;
+import simblock.node.Node;
+
+/**
+ * The type Get chunk message task requests a chunk of a block downloaded from several peers, see
+ * {@link simblock.settings.SimulationConfiguration#MULTI_SOURCE_DOWNLOAD}.
+ */
+public class GetChunkMessageTask extends AbstractMessageTask {
+
+  /**
+   * The block of the chunk.
+   */
+  private final Block block;
+
+  /**
+   * The index of the chunk in the block.
+   */
+  private final int chunk;
+
+  /**
+   * The time the download of the block began.
+   */
+  private final long downloadStart;
+
+  /**
+   * Instantiates a new Get chunk message task.
+   *
+   * @param from          the requesting node
+   * @param to            the node asked for the chunk
+   * @param block         the block
+   * @param chunk         the index of the chunk
+   * @param downloadStart the time the download of the block began
+   */
+  public GetChunkMessageTask(Node from, Node to, Block block, int chunk, long downloadStart) {
+    super(from, to);
+    this.block = block;
+    this.chunk = chunk;
+    this.downloadStart = downloadStart;
+  }
+
+  /**
+   * Gets the block of the chunk.
+   *
+   * @return the block
+   */
+  public Block getBlock() {
+    return this.block;
+  }
+
+  /**
+   * Gets the index of the chunk.
+   *
+   * @return the chunk index
+   */
+  public int getChunk() {
+    return this.chunk;
+  }
+
+  /**
+   * Gets the time the download of the block began, which ranks the request in the upload queue.
+   *
+   * @return the time
+   */
+  public long getDownloadStart() {
+    return this.downloadStart;
+  }
+
+  @Override
+  public long getSize() {
+    return GETDATA_MESSAGE_SIZE;
+  }
+
+  /**
+   * The chunk will not arrive, the requesting node asks another peer for it.
+   */
+  @Override
+  protected void cancel() {
+    this.getFrom().abortChunk(this.block, this.getTo(), this.chunk);
+  }
+}
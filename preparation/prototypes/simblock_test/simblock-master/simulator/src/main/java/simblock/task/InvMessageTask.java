@@ -16,6 +16,8 @@
 
 package simblock.task;
 
+import static simblock.settings.SimulationConfiguration.INV_MESSAGE_SIZE;
+
 import simblock.block.Block;
 import simblock.node.Node;
 
@@ -51,4 +53,9 @@ public class InvMessageTask extends AbstractMessageTask {
     return this.block;
   }
 
+  @Override
+  public long getSize() {
+    return INV_MESSAGE_SIZE;
+  }
+
 }
@@ -16,6 +16,8 @@
 
 package simblock.task;
 
+import static simblock.settings.SimulationConfiguration.GETDATA_MESSAGE_SIZE;
+
 import simblock.block.Block;
 import simblock.node.Node;
 
@@ -51,4 +53,17 @@ public class RecMessageTask extends AbstractMessageTask {
     return this.block;
   }
 
+  @Override
+  public long getSize() {
+    return GETDATA_MESSAGE_SIZE;
+  }
+
+  /**
+   * The requested block will not arrive, the requesting node may download it from another peer.
+   */
+  @Override
+  protected void cancel() {
+    this.getFrom().abortDownload(this.block, this.getTo());
+  }
+
 }
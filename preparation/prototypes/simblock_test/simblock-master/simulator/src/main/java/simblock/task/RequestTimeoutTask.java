@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Distributed Systems Group
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simblock.task;
+
+import static simblock.settings.SimulationConfiguration.DOWNLOAD_TIMEOUT;
+
+import simblock.node.Node;
+
+/**
+ * The type Request timeout task lets a node give up a block request the requested peer did not
+ * answer in time, for instance because the peer crashed with the request in its upload queue.
+ */
+public class RequestTimeoutTask implements Task {
+  /**
+   * The requesting node.
+   */
+  private final Node node;
+
+  /**
+   * The request.
+   */
+  private final AbstractMessageTask request;
+
+  /**
+   * Instantiates a new Request timeout task.
+   *
+   * @param node    the requesting node
+   * @param request the request
+   */
+  public RequestTimeoutTask(Node node, AbstractMessageTask request) {
+    this.node = node;
+    this.request = request;
+  }
+
+  @Override
+  public long getInterval() {
+    return DOWNLOAD_TIMEOUT;
+  }
+
+  @Override
+  public void run() {
+    this.node.timeoutRequest(this.request);
+  }
+}
@@ -6,6 +6,8 @@ import simblock.task.AbstractMessageTask;
 import simblock.task.BlockMessageTask;
 
 import static simblock.settings.SimulationConfiguration.BLOCK_SIZE;
+import static simblock.settings.SimulationConfiguration.PROPOSAL_HEADER_SIZE;
+import static simblock.settings.SimulationConfiguration.VOTE_MESSAGE_SIZE;
 import static simblock.simulator.Main.OUT_JSON_FILE;
 import static simblock.simulator.Timer.getCurrentTime;
 
@@ -48,12 +50,29 @@ public class AlgorandMsgTask extends BlockMessageTask {
 
     public Node getVoteFrom() { return this.voteFrom; }
 
+    /**
+     * Gets the wire size of a message of the provided type. Proposals carry the proposal header
+     * and the block payload, votes only carry the vote and the credential of the voter.
+     *
+     * @param type the message type
+     * @return the message size in bytes
+     */
+    public static long getMessageSize(AlgorandMsgType type) {
+        return type == AlgorandMsgType.PROPOSAL ? PROPOSAL_HEADER_SIZE + BLOCK_SIZE : VOTE_MESSAGE_SIZE;
+    }
+
+    @Override
+    public long getSize() { return getMessageSize(this.type); }
+
     /**
      * Overwriting the run method with the purpose of using a different event, so that it doesn't update the
      * state of a node's chain in the visualizer
      */
     @Override
     public void run() {
+        if(isDropped()) {
+            return;
+        }
         String sType = "";
         switch(getType()) {
             case PROPOSAL: